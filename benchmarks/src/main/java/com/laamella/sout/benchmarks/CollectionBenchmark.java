@@ -0,0 +1,74 @@
+package com.laamella.sout.benchmarks;
+
+import com.laamella.sout.SoutTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Looping over lists, primitive arrays and streams.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollectionBenchmark {
+    private final SoutTemplate template = Models.template("{values|{}|, }");
+    private final Writer output = Writer.nullWriter();
+
+    @Param({"10", "10000"})
+    public int size;
+
+    private Map<String, Object> list;
+    private Map<String, Object> intArray;
+    private Map<String, Object> longArray;
+    private Map<String, Object> doubleArray;
+    private Function<String, Object> stream;
+
+    @Setup
+    public void setUp() {
+        var values = new ArrayList<Integer>();
+        for (int i = 0; i < size; i++) {
+            values.add(i);
+        }
+        list = Map.of("values", List.copyOf(values));
+        intArray = Map.of("values", IntStream.range(0, size).toArray());
+        longArray = Map.of("values", IntStream.range(0, size).asLongStream().toArray());
+        doubleArray = Map.of("values", IntStream.range(0, size).asDoubleStream().toArray());
+        // A stream can only be used once, so create a new one every time it is asked for.
+        stream = name -> values.stream();
+    }
+
+    @Benchmark
+    public void list() {
+        template.render(list, output);
+    }
+
+    @Benchmark
+    public void intArray() {
+        template.render(intArray, output);
+    }
+
+    @Benchmark
+    public void longArray() {
+        template.render(longArray, output);
+    }
+
+    @Benchmark
+    public void doubleArray() {
+        template.render(doubleArray, output);
+    }
+
+    @Benchmark
+    public void stream() {
+        template.render(stream, output);
+    }
+}
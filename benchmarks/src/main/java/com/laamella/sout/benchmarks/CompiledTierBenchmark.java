@@ -0,0 +1,71 @@
+package com.laamella.sout.benchmarks;
+
+import com.laamella.sout.SoutConfiguration;
+import com.laamella.sout.SoutTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering a page with a loop by walking the parsed template, and with the compiled tier.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompiledTierBenchmark {
+    private static final String PAGE = "<html><head><title>{title}</title></head><body><h1>Hello {user}</h1>\n"
+            + "<ul>{items|<li class=\"item\">{name}: {count} {vip|<b>VIP</b>|regular}</li>\n}</ul>\n"
+            + "<p>Footer for {user}</p></body></html>";
+
+    private final SoutTemplate tree = Models.template(PAGE);
+    private SoutTemplate compiled;
+    private final Writer output = Writer.nullWriter();
+    private final Page page = new Page();
+
+    public static class Item {
+        public final String name;
+        public final int count;
+        public final boolean vip;
+
+        Item(String name, int count, boolean vip) {
+            this.name = name;
+            this.count = count;
+            this.vip = vip;
+        }
+    }
+
+    public static class Page {
+        public final String title = "Orders";
+        public final String user = "Piet";
+        public final List<Item> items = new ArrayList<>();
+    }
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        for (int i = 0; i < 30; i++) {
+            page.items.add(new Item("item " + i, 1000 + i, i % 3 == 0));
+        }
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setCompileThreshold(1);
+        compiled = Models.template(PAGE, configuration);
+        compiled.render(page, output);
+        // Compiling happens in the background. Give it time, so the measurement only sees compiled renders.
+        Thread.sleep(5000);
+    }
+
+    @Benchmark
+    public void tree() {
+        tree.render(page, output);
+    }
+
+    @Benchmark
+    public void compiled() {
+        compiled.render(page, output);
+    }
+}
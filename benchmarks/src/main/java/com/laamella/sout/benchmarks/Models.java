@@ -0,0 +1,40 @@
+package com.laamella.sout.benchmarks;
+
+import com.laamella.sout.SoutConfiguration;
+import com.laamella.sout.SoutTemplate;
+
+import java.io.StringReader;
+
+/**
+ * Models and helpers shared by the benchmarks.
+ */
+final class Models {
+    private Models() {
+    }
+
+    static final SoutConfiguration CONFIGURATION = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+
+    static SoutTemplate template(String text) {
+        return new SoutTemplate(new StringReader(text), CONFIGURATION);
+    }
+
+    static SoutTemplate template(String text, SoutConfiguration configuration) {
+        return new SoutTemplate(new StringReader(text), configuration);
+    }
+
+    static class Pojo {
+        final String name = "Piet";
+        final Address address = new Address();
+
+        String getCity() {
+            return address.city;
+        }
+    }
+
+    static class Address {
+        final String city = "Amsterdam";
+    }
+
+    record Person(String name, Address address) {
+    }
+}
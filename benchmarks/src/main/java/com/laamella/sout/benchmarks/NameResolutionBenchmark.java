@@ -0,0 +1,70 @@
+package com.laamella.sout.benchmarks;
+
+import com.laamella.sout.SoutTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Rendering names resolved on maps, objects with fields and getters, records and functions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NameResolutionBenchmark {
+    private final SoutTemplate nameTemplate = Models.template("{name}");
+    private final SoutTemplate pathTemplate = Models.template("{address.city}");
+    private final SoutTemplate getterTemplate = Models.template("{city}");
+    private final Writer output = Writer.nullWriter();
+
+    private final Map<String, Object> map = Map.of("name", "Piet", "address", Map.of("city", "Amsterdam"));
+    private final Models.Pojo pojo = new Models.Pojo();
+    private final Models.Person record = new Models.Person("Piet", new Models.Address());
+    private final Function<String, Object> function = name -> "Piet";
+
+    @Benchmark
+    public void map() {
+        nameTemplate.render(map, output);
+    }
+
+    @Benchmark
+    public void mapPath() {
+        pathTemplate.render(map, output);
+    }
+
+    @Benchmark
+    public void pojoField() {
+        nameTemplate.render(pojo, output);
+    }
+
+    @Benchmark
+    public void pojoPath() {
+        pathTemplate.render(pojo, output);
+    }
+
+    @Benchmark
+    public void pojoGetter() {
+        getterTemplate.render(pojo, output);
+    }
+
+    @Benchmark
+    public void record() {
+        nameTemplate.render(record, output);
+    }
+
+    @Benchmark
+    public void recordPath() {
+        pathTemplate.render(record, output);
+    }
+
+    @Benchmark
+    public void function() {
+        nameTemplate.render(function, output);
+    }
+}
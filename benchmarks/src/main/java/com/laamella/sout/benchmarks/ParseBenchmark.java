@@ -0,0 +1,45 @@
+package com.laamella.sout.benchmarks;
+
+import com.laamella.sout.SoutTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing templates from text, for a small template and for generated templates of multiple megabytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+    private static final String ROW = "<tr><td>{name}</td><td>{address.city}</td>{items|<td>{}</td>|, }{active|yes|no}</tr>\n";
+
+    @Param({"small", "1MB", "4MB"})
+    public String size;
+
+    private String templateText;
+
+    @Setup
+    public void setUp() {
+        var targetLength = switch (size) {
+            case "small" -> 0;
+            case "1MB" -> 1 << 20;
+            case "4MB" -> 4 << 20;
+            default -> throw new IllegalArgumentException(size);
+        };
+        var text = new StringBuilder(ROW);
+        while (text.length() < targetLength) {
+            text.append(ROW);
+        }
+        templateText = text.toString();
+    }
+
+    @Benchmark
+    public SoutTemplate parse() {
+        return new SoutTemplate(new StringReader(templateText), Models.CONFIGURATION);
+    }
+}
@@ -0,0 +1,49 @@
+package com.laamella.sout.benchmarks;
+
+import com.laamella.sout.CustomNameRenderer;
+import com.laamella.sout.SoutConfiguration;
+import com.laamella.sout.SoutTemplate;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up a variable from the bottom of a deep chain of scopes.
+ * Every nesting creates a scope, and the variable is defined in the global scope.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScopeBenchmark {
+    @Param({"1", "8", "32"})
+    public int depth;
+
+    private SoutTemplate template;
+    private final Writer output = Writer.nullWriter();
+    private final Models.Pojo model = new Models.Pojo();
+
+    @Setup
+    public void setUp() {
+        CustomNameRenderer counter = (name, parts, model, scope, position, outputWriter) -> {
+            if (name.equals("counter")) {
+                Integer count = scope.getGlobalScope().getVariable(name, 0);
+                scope.updateVariable(name, count + 1);
+                return true;
+            }
+            return false;
+        };
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', counter, null, null);
+        // Nesting on the empty name nests on the model itself.
+        var text = "{|".repeat(depth) + "{counter}" + "}".repeat(depth);
+        template = Models.template(text, configuration);
+    }
+
+    @Benchmark
+    public void deepScopeLookup() {
+        template.render(model, output);
+    }
+}
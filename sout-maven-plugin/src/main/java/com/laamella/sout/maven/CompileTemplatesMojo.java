@@ -0,0 +1,215 @@
+package com.laamella.sout.maven;
+
+import com.laamella.sout.SoutCompiler;
+import com.laamella.sout.SoutConfiguration;
+import com.laamella.sout.SoutException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compiles every template in sourceDirectory to a Java class in outputDirectory,
+ * and adds outputDirectory to the sources of the project.
+ * A template in a subdirectory gets the subdirectory as package, below packageName.
+ * Its class name is its file name without extension, in CamelCase: "order-mail.sout" becomes OrderMail.
+ * Templates include other files in sourceDirectory by their path, like "{@mail/header.sout}".
+ * <p>
+ * Since any template can include any other, all templates are compiled again when one of them changed,
+ * or when the settings or the version of sout changed. Classes of templates that were removed are deleted.
+ */
+@Mojo(name = "compile", defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
+public class CompileTemplatesMojo extends AbstractMojo {
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    @Parameter(defaultValue = "${project.basedir}/src/main/sout")
+    private File sourceDirectory;
+
+    @Parameter(defaultValue = "${project.build.directory}/generated-sources/sout")
+    private File outputDirectory;
+
+    @Parameter(defaultValue = "")
+    private String packageName;
+
+    @Parameter(defaultValue = ".sout")
+    private String extension;
+
+    @Parameter(defaultValue = "${project.build.sourceEncoding}")
+    private String encoding;
+
+    @Parameter(defaultValue = "{")
+    private char openChar;
+
+    @Parameter(defaultValue = "|")
+    private char separatorChar;
+
+    @Parameter(defaultValue = "}")
+    private char closeChar;
+
+    @Parameter(defaultValue = "\\")
+    private char escapeChar;
+
+    @Parameter(defaultValue = "${plugin.version}", readonly = true)
+    private String soutVersion;
+
+    /**
+     * Remembers the settings and the classes of the previous compilation, to know when to compile again and what to delete.
+     */
+    static final String STATE_FILE = ".sout-compile-state";
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        project.addCompileSourceRoot(outputDirectory.getPath());
+        if (!sourceDirectory.isDirectory()) {
+            getLog().info("No templates in " + sourceDirectory);
+            return;
+        }
+        var charset = encoding == null || encoding.isEmpty() ? Charset.defaultCharset() : Charset.forName(encoding);
+        var sourceRoot = sourceDirectory.toPath().toAbsolutePath().normalize();
+        var outputRoot = outputDirectory.toPath();
+        var compiler = new SoutCompiler(
+                new SoutConfiguration(openChar, separatorChar, closeChar, escapeChar, null, null, null),
+                name -> readPartial(sourceRoot, name, charset));
+        List<Path> templates;
+        try (Stream<Path> files = Files.walk(sourceRoot)) {
+            templates = files
+                    .filter(file -> Files.isRegularFile(file) && file.getFileName().toString().endsWith(extension))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't list the templates in " + sourceDirectory, e);
+        }
+        var settings = String.join(" ", "sout", soutVersion, String.valueOf(new char[]{openChar, separatorChar, closeChar, escapeChar}),
+                charset.name(), packageName == null ? "" : packageName, extension);
+        var stateFile = outputRoot.resolve(STATE_FILE);
+        try {
+            var outputs = new ArrayList<String>();
+            var newestTemplate = FileTime.fromMillis(0);
+            for (var template : templates) {
+                var relative = sourceRoot.relativize(template);
+                outputs.add(outputFileOf(relative));
+                var modified = Files.getLastModifiedTime(template);
+                if (modified.compareTo(newestTemplate) > 0) {
+                    newestTemplate = modified;
+                }
+            }
+            var previousState = Files.exists(stateFile) ? Files.readAllLines(stateFile, UTF_8) : List.<String>of();
+            if (isUpToDate(previousState, settings, outputs, outputRoot, newestTemplate)) {
+                getLog().info("All " + templates.size() + " templates are up to date in " + outputDirectory);
+                return;
+            }
+            for (int i = 0; i < templates.size(); i++) {
+                var relative = sourceRoot.relativize(templates.get(i));
+                var output = outputRoot.resolve(outputs.get(i));
+                try {
+                    var source = compiler.compile(Files.readString(templates.get(i), charset), packageOf(relative.getParent()), classNameOf(relative.getFileName().toString()));
+                    Files.createDirectories(output.getParent());
+                    Files.writeString(output, source, charset);
+                } catch (SoutException e) {
+                    throw new MojoExecutionException(relative + ": " + e.getMessage(), e);
+                }
+            }
+            var current = new HashSet<>(outputs);
+            for (var previousOutput : previousState.subList(Math.min(1, previousState.size()), previousState.size())) {
+                if (!current.contains(previousOutput)) {
+                    Files.deleteIfExists(outputRoot.resolve(previousOutput));
+                }
+            }
+            var state = new ArrayList<String>();
+            state.add(settings);
+            state.addAll(outputs);
+            Files.createDirectories(outputRoot);
+            Files.write(stateFile, state, UTF_8);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't compile the templates in " + sourceDirectory, e);
+        }
+        getLog().info("Compiled " + templates.size() + " templates to " + outputDirectory);
+    }
+
+    /**
+     * @return whether the previous compilation had the same settings and classes, and no template changed since.
+     */
+    private static boolean isUpToDate(List<String> previousState, String settings, List<String> outputs, Path outputRoot, FileTime newestTemplate) throws IOException {
+        if (previousState.isEmpty() || !previousState.get(0).equals(settings) || !previousState.subList(1, previousState.size()).equals(outputs)) {
+            return false;
+        }
+        for (var output : outputs) {
+            var file = outputRoot.resolve(output);
+            if (!Files.exists(file) || Files.getLastModifiedTime(file).compareTo(newestTemplate) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the path of the class for the template at relative, relative to the output directory, with "/" as separator.
+     */
+    private String outputFileOf(Path relative) {
+        var templatePackage = packageOf(relative.getParent());
+        var className = classNameOf(relative.getFileName().toString());
+        return (templatePackage.isEmpty() ? "" : templatePackage.replace('.', '/') + "/") + className + ".java";
+    }
+
+    /**
+     * @return the text of the template called name in sourceRoot, or null if there is none.
+     */
+    private static CharSequence readPartial(Path sourceRoot, String name, Charset charset) {
+        var path = sourceRoot.resolve(name).normalize();
+        if (!path.startsWith(sourceRoot) || !Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            return Files.readString(path, charset);
+        } catch (IOException e) {
+            throw new SoutException("Template %s can't be read: %s", name, e);
+        }
+    }
+
+    private String packageOf(Path directory) {
+        var packageParts = new StringBuilder(packageName == null ? "" : packageName);
+        if (directory != null) {
+            for (var part : directory) {
+                if (packageParts.length() > 0) {
+                    packageParts.append('.');
+                }
+                packageParts.append(part);
+            }
+        }
+        return packageParts.toString();
+    }
+
+    private String classNameOf(String fileName) {
+        var baseName = fileName.substring(0, fileName.length() - extension.length());
+        var className = new StringBuilder();
+        boolean upper = true;
+        for (char c : baseName.toCharArray()) {
+            if (Character.isJavaIdentifierPart(c) && c != '_' && c != '$') {
+                className.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            } else {
+                upper = true;
+            }
+        }
+        if (className.length() == 0 || !Character.isJavaIdentifierStart(className.charAt(0))) {
+            className.insert(0, '_');
+        }
+        return className.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package com.laamella.sout.maven;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CompileTemplatesMojoTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void templatesAreCompiledWithTheirIncludes() throws Exception {
+        write("mail/header.sout", "Dear {name},");
+        write("mail/order-mail.sout", "{@mail/header.sout} your order.");
+
+        var project = new MavenProject();
+        mojo(project, '{', '}').execute();
+
+        var generated = Files.readString(output("mail/OrderMail.java"), UTF_8);
+        assertThat(generated).contains("package generated.mail;", "class OrderMail", "Dear ", " your order.");
+        assertThat(output("mail/Header.java")).exists();
+        assertThat(project.getCompileSourceRoots()).contains(directory.resolve("generated-sources").toString());
+    }
+
+    @Test
+    public void missingPartialsAndCyclesAreReported() throws Exception {
+        write("a.sout", "{@b.sout}");
+        assertThatThrownBy(() -> mojo(new MavenProject(), '{', '}').execute())
+                .isInstanceOf(MojoExecutionException.class)
+                .hasMessageContaining("Partial b.sout not found.");
+
+        write("b.sout", "{@a.sout}");
+        assertThatThrownBy(() -> mojo(new MavenProject(), '{', '}').execute())
+                .isInstanceOf(MojoExecutionException.class)
+                .hasMessageContaining("Include cycle: ");
+    }
+
+    @Test
+    public void changesCompileEverythingAgainAndRemovedTemplatesAreDeleted() throws Exception {
+        write("header.sout", "Dear {name},");
+        write("mail.sout", "{@header.sout} bye.");
+        write("old.sout", "old");
+        mojo(new MavenProject(), '{', '}').execute();
+        assertThat(output("Old.java")).exists();
+
+        // Up to date: nothing is written.
+        var untouched = FileTime.fromMillis(1_000_000);
+        Files.setLastModifiedTime(output("Mail.java"), untouched);
+        Files.setLastModifiedTime(output("Old.java"), untouched);
+        Files.setLastModifiedTime(directory.resolve("sout/header.sout"), FileTime.fromMillis(0));
+        Files.setLastModifiedTime(directory.resolve("sout/mail.sout"), FileTime.fromMillis(0));
+        Files.setLastModifiedTime(directory.resolve("sout/old.sout"), FileTime.fromMillis(0));
+        mojo(new MavenProject(), '{', '}').execute();
+        assertThat(Files.getLastModifiedTime(output("Mail.java"))).isEqualTo(untouched);
+
+        // A changed partial compiles the templates that include it.
+        write("header.sout", "Hi {name},");
+        Files.delete(directory.resolve("sout/old.sout"));
+        mojo(new MavenProject(), '{', '}').execute();
+        assertThat(Files.readString(output("Mail.java"), UTF_8)).contains("Hi ");
+        assertThat(output("Old.java")).doesNotExist();
+
+        // Other delimiters compile everything again.
+        write("header.sout", "Hi [name],");
+        write("mail.sout", "[@header.sout] bye.");
+        Files.setLastModifiedTime(directory.resolve("sout/header.sout"), FileTime.fromMillis(0));
+        Files.setLastModifiedTime(directory.resolve("sout/mail.sout"), FileTime.fromMillis(0));
+        mojo(new MavenProject(), '[', ']').execute();
+        assertThat(Files.readString(output("Mail.java"), UTF_8)).contains("Hi ").doesNotContain("[@");
+    }
+
+    private void write(String template, String text) throws IOException {
+        var file = directory.resolve("sout").resolve(template);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, text, UTF_8);
+    }
+
+    private Path output(String file) {
+        return directory.resolve("generated-sources/generated").resolve(file);
+    }
+
+    private CompileTemplatesMojo mojo(MavenProject project, char openChar, char closeChar) throws ReflectiveOperationException {
+        var mojo = new CompileTemplatesMojo();
+        set(mojo, "project", project);
+        set(mojo, "sourceDirectory", directory.resolve("sout").toFile());
+        set(mojo, "outputDirectory", directory.resolve("generated-sources").toFile());
+        set(mojo, "packageName", "generated");
+        set(mojo, "extension", ".sout");
+        set(mojo, "encoding", "UTF-8");
+        set(mojo, "openChar", openChar);
+        set(mojo, "separatorChar", '|');
+        set(mojo, "closeChar", closeChar);
+        set(mojo, "escapeChar", '\\');
+        set(mojo, "soutVersion", "test");
+        return mojo;
+    }
+
+    /**
+     * Set a parameter the way Maven does.
+     */
+    private static void set(CompileTemplatesMojo mojo, String field, Object value) throws ReflectiveOperationException {
+        var declaredField = CompileTemplatesMojo.class.getDeclaredField(field);
+        declaredField.setAccessible(true);
+        declaredField.set(mojo, value);
+    }
+}
@@ -0,0 +1,143 @@
+package com.laamella.sout;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Renders one template for many models at once. See {@link SoutTemplate#renderAll(Iterable, Function, int)}.
+ * <p>
+ * Every render goes to a buffer first, which is then copied to the output in one go.
+ * There are never more buffers than renders running at the same time, and they are reused for the next models.
+ */
+final class BatchRenderer {
+    private static final int COPY_SIZE = 8192;
+    /**
+     * Buffers that grew bigger than this are not reused, so that one huge render doesn't hold on to its memory.
+     */
+    private static final int MAX_REUSED_BUFFER_SIZE = 1 << 20;
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() on runtimes that have virtual threads, otherwise null.
+     */
+    private static final MethodHandle newVirtualThreadPerTaskExecutor = findVirtualThreadPerTaskExecutor();
+
+    private final SoutTemplate template;
+    private final int maxConcurrency;
+    private final ConcurrentLinkedQueue<RenderBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<BatchResult.Failure> failures = new ConcurrentLinkedQueue<>();
+    private final LongAdder totalRenderNanos = new LongAdder();
+    private final LongAccumulator maxRenderNanos = new LongAccumulator(Math::max, 0);
+
+    private static final class RenderBuffer {
+        final StringBuilderWriter writer = new StringBuilderWriter(new StringBuilder());
+        final char[] chars = new char[COPY_SIZE];
+
+        void copyTo(Writer output) throws IOException {
+            var text = writer.stringBuilder;
+            for (int start = 0; start < text.length(); start += COPY_SIZE) {
+                int end = Math.min(text.length(), start + COPY_SIZE);
+                text.getChars(start, end, chars, 0);
+                output.write(chars, 0, end - start);
+            }
+        }
+    }
+
+    BatchRenderer(SoutTemplate template, int maxConcurrency) {
+        this.template = template;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    BatchResult renderAll(Iterable<?> models, Function<Object, Writer> outputs) {
+        long start = System.nanoTime();
+        var permits = new Semaphore(maxConcurrency);
+        var executor = newExecutor();
+        int count = 0;
+        try {
+            for (Object model : models) {
+                permits.acquire();
+                int index = count++;
+                executor.execute(() -> {
+                    try {
+                        render(index, model, outputs);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            var exception = new SoutException("Interrupted while rendering a batch.");
+            exception.initCause(e);
+            throw exception;
+        } finally {
+            executor.shutdown();
+        }
+        var sortedFailures = new ArrayList<>(failures);
+        sortedFailures.sort(Comparator.comparingInt(BatchResult.Failure::getIndex));
+        return new BatchResult(count, sortedFailures, totalRenderNanos.sum(), maxRenderNanos.get(), System.nanoTime() - start);
+    }
+
+    private void render(int index, Object model, Function<Object, Writer> outputs) {
+        long start = System.nanoTime();
+        var buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = new RenderBuffer();
+        }
+        try {
+            template.render(model, buffer.writer);
+            try (var output = outputs.apply(model)) {
+                buffer.copyTo(output);
+            }
+        } catch (Throwable e) {
+            // Errors too, so that they end up in the result instead of being lost in the executor.
+            failures.add(new BatchResult.Failure(index, model, e));
+        } finally {
+            var text = buffer.writer.stringBuilder;
+            if (text.capacity() <= MAX_REUSED_BUFFER_SIZE) {
+                text.setLength(0);
+                buffers.add(buffer);
+            }
+            long nanos = System.nanoTime() - start;
+            totalRenderNanos.add(nanos);
+            maxRenderNanos.accumulate(nanos);
+        }
+    }
+
+    private ExecutorService newExecutor() {
+        if (newVirtualThreadPerTaskExecutor != null) {
+            try {
+                return (ExecutorService) newVirtualThreadPerTaskExecutor.invokeExact();
+            } catch (Throwable e) {
+                // Virtual threads are there, but can't be used. Use platform threads instead.
+            }
+        }
+        return Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+            var thread = new Thread(runnable, "sout batch renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static MethodHandle findVirtualThreadPerTaskExecutor() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.laamella.sout;
+
+import java.util.List;
+
+/**
+ * What happened during {@link SoutTemplate#renderAll(Iterable, java.util.function.Function, int)}.
+ */
+public class BatchResult {
+    private final int renderCount;
+    private final List<Failure> failures;
+    private final long totalRenderNanos;
+    private final long maxRenderNanos;
+    private final long elapsedNanos;
+
+    /**
+     * A model that could not be rendered.
+     */
+    public static class Failure {
+        private final int index;
+        private final Object model;
+        private final Throwable exception;
+
+        Failure(int index, Object model, Throwable exception) {
+            this.index = index;
+            this.model = model;
+            this.exception = exception;
+        }
+
+        /**
+         * @return the position of the model in the models that were passed, starting at 0.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public Object getModel() {
+            return model;
+        }
+
+        /**
+         * @return the {@link SoutException} from rendering, the exception from getting or writing to the output,
+         * or an {@link Error} that was thrown while doing so.
+         */
+        public Throwable getException() {
+            return exception;
+        }
+    }
+
+    BatchResult(int renderCount, List<Failure> failures, long totalRenderNanos, long maxRenderNanos, long elapsedNanos) {
+        this.renderCount = renderCount;
+        this.failures = failures;
+        this.totalRenderNanos = totalRenderNanos;
+        this.maxRenderNanos = maxRenderNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the amount of models, both rendered and failed.
+     */
+    public int getRenderCount() {
+        return renderCount;
+    }
+
+    /**
+     * @return the models that failed, sorted by index.
+     */
+    public List<Failure> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the time spent on all renders together, including writing the output.
+     */
+    public long getTotalRenderNanos() {
+        return totalRenderNanos;
+    }
+
+    /**
+     * @return the time spent on the slowest render.
+     */
+    public long getMaxRenderNanos() {
+        return maxRenderNanos;
+    }
+
+    /**
+     * @return the time from the start of the batch until the last render finished.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
@@ -6,9 +6,8 @@ import java.io.Writer;
  * The standard type handler for booleans. Takes one or two parts.
  * Renders the first when the boolean is true, renders the second if it exists and the boolean is false.
  */
-class BooleanRenderer implements CustomTypeRenderer {
-    @Override
-    public boolean render(String name, Renderable[] parts, Object model, Scope scope, Object parentModel, Scope parentScope, Position position, Writer outputWriter) {
+class BooleanRenderer {
+    boolean render(NestedRenderer node, Renderable[] parts, Object model, Scope scope, Object parentModel, Writer outputWriter) {
         if (!(model instanceof Boolean)) {
             return false;
         }
@@ -20,7 +19,7 @@ class BooleanRenderer implements CustomTypeRenderer {
             truePart = parts[0];
             falsePart = parts[1];
         } else {
-            throw new SoutException(position, "Wrong amount of parts (%d) for rendering boolean \"%s\".", parts.length, name);
+            throw new SoutException(node.position(), "Wrong amount of parts (%d) for rendering boolean \"%s\".", parts.length, node.name);
         }
         if ((boolean) model) {
             truePart.render(parentModel, scope, outputWriter);
@@ -1,26 +1,56 @@
 package com.laamella.sout;
 
+import java.io.IOException;
 import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The standard collection renderer. Takes a variety of parts. See README.md.
  */
-class CollectionRenderer implements CustomTypeRenderer {
+class CollectionRenderer {
     private final IteratorFactory iteratorFactory;
+    private final int parallelLoopThreshold;
+    private final ForkJoinPool parallelLoopPool;
 
-    CollectionRenderer(IteratorFactory iteratorFactory) {
+    /**
+     * @param parallelLoopThreshold lists and arrays with at least this many elements are rendered in parallel.
+     *                              0 or less means never.
+     * @param parallelLoopPool      the pool to render in parallel on.
+     */
+    CollectionRenderer(IteratorFactory iteratorFactory, int parallelLoopThreshold, ForkJoinPool parallelLoopPool) {
         this.iteratorFactory = iteratorFactory;
+        this.parallelLoopThreshold = parallelLoopThreshold;
+        this.parallelLoopPool = parallelLoopPool;
     }
 
-    @Override
-    public boolean render(String name, Renderable[] parts, Object model, Scope scope, Object parentModel, Scope parentScope, Position position, Writer outputWriter) {
+    boolean render(NestedRenderer node, Renderable[] parts, Object model, Scope scope, Object parentModel, Scope parentScope, Writer outputWriter) {
 
-        var iterator = iteratorFactory.toIterator(model, parentScope, position);
+        // Lists and arrays are walked by index, everything else by iterator.
+        Iterator<?> iterator = iteratorFactory.toCustomIterator(model, parentScope, node);
+        int size = -1;
         if (iterator == null) {
-            return false;
+            if (model == null) {
+                throw new SoutException(node.position(), "Trying to nest into null.");
+            }
+            size = indexableSize(model);
+            if (size < 0) {
+                iterator = IteratorFactory.toStandardIterator(model);
+                if (iterator == null) {
+                    return false;
+                }
+            }
         }
-        if (!iterator.hasNext()) {
+        if (iterator != null ? !iterator.hasNext() : size == 0) {
             // Empty collection, nothing to do.
+            if (node.metrics != null) {
+                node.metrics.loopRendered(0);
+            }
             return true;
         }
         Renderable mainPart, leadIn = null, separatorPart = null, leadOut = null;
@@ -38,25 +68,165 @@ class CollectionRenderer implements CustomTypeRenderer {
                 separatorPart = parts[2];
                 leadOut = parts[3];
             }
-            default -> throw new SoutException(position, "Wrong amount of parts (%d) for rendering loop \"%s\".", parts.length, name);
+            default -> throw new SoutException(node.position(), "Wrong amount of parts (%d) for rendering loop \"%s\".", parts.length, node.name);
         }
 
         if (leadIn != null) {
             leadIn.render(parentModel, scope, outputWriter);
         }
 
-        var printSeparator = false;
-        while (iterator.hasNext()) {
-            var listElement = iterator.next();
-            if (printSeparator && separatorPart != null) {
-                separatorPart.render(listElement, scope, outputWriter);
+        if (iterator == null) {
+            if (parallelLoopThreshold > 0 && size >= parallelLoopThreshold && !(outputWriter instanceof IncrementalWriter)) {
+                renderInParallel(model, size, mainPart, separatorPart, scope, node, outputWriter);
+            } else {
+                renderByIndex(model, 0, size, mainPart, separatorPart, scope, outputWriter);
             }
-            printSeparator = true;
-            mainPart.render(listElement, scope, outputWriter);
+        } else {
+            size = 0;
+            while (iterator.hasNext()) {
+                var listElement = iterator.next();
+                if (size > 0 && separatorPart != null) {
+                    separatorPart.render(listElement, scope, outputWriter);
+                }
+                size++;
+                mainPart.render(listElement, scope, outputWriter);
+            }
+        }
+        if (node.metrics != null) {
+            node.metrics.loopRendered(size);
         }
         if (leadOut != null) {
             leadOut.render(parentModel, scope, outputWriter);
         }
         return true;
     }
+
+    /**
+     * @return the amount of elements in model if its elements can be fetched by index, otherwise -1.
+     */
+    private static int indexableSize(Object model) {
+        if (model instanceof List && model instanceof RandomAccess) {
+            return ((List<?>) model).size();
+        } else if (model != null && model.getClass().isArray()) {
+            return Array.getLength(model);
+        }
+        return -1;
+    }
+
+    private static Object elementAt(Object model, int index) {
+        if (model instanceof List) {
+            return ((List<?>) model).get(index);
+        } else if (model instanceof Object[]) {
+            return ((Object[]) model)[index];
+        } else if (model instanceof boolean[]) {
+            return ((boolean[]) model)[index];
+        } else if (model instanceof byte[]) {
+            return ((byte[]) model)[index];
+        } else if (model instanceof char[]) {
+            return ((char[]) model)[index];
+        } else if (model instanceof short[]) {
+            return ((short[]) model)[index];
+        } else if (model instanceof int[]) {
+            return ((int[]) model)[index];
+        } else if (model instanceof long[]) {
+            return ((long[]) model)[index];
+        } else if (model instanceof float[]) {
+            return ((float[]) model)[index];
+        }
+        return ((double[]) model)[index];
+    }
+
+    /**
+     * Render the elements from start to end.
+     * The elements of int, long and double arrays are passed to the parts without boxing them.
+     */
+    private static void renderByIndex(Object model, int start, int end, Renderable mainPart, Renderable separatorPart, Scope scope, Writer outputWriter) {
+        if (mainPart instanceof Renderer && (separatorPart == null || separatorPart instanceof Renderer)) {
+            var main = (Renderer) mainPart;
+            var separator = (Renderer) separatorPart;
+            if (model instanceof int[]) {
+                var elements = (int[]) model;
+                for (int i = start; i < end; i++) {
+                    if (i > 0 && separator != null) {
+                        separator.renderInt(elements[i], scope, outputWriter);
+                    }
+                    main.renderInt(elements[i], scope, outputWriter);
+                }
+                return;
+            } else if (model instanceof long[]) {
+                var elements = (long[]) model;
+                for (int i = start; i < end; i++) {
+                    if (i > 0 && separator != null) {
+                        separator.renderLong(elements[i], scope, outputWriter);
+                    }
+                    main.renderLong(elements[i], scope, outputWriter);
+                }
+                return;
+            } else if (model instanceof double[]) {
+                var elements = (double[]) model;
+                for (int i = start; i < end; i++) {
+                    if (i > 0 && separator != null) {
+                        separator.renderDouble(elements[i], scope, outputWriter);
+                    }
+                    main.renderDouble(elements[i], scope, outputWriter);
+                }
+                return;
+            }
+        }
+        if (model instanceof List) {
+            var elements = (List<?>) model;
+            for (int i = start; i < end; i++) {
+                var listElement = elements.get(i);
+                if (i > 0 && separatorPart != null) {
+                    separatorPart.render(listElement, scope, outputWriter);
+                }
+                mainPart.render(listElement, scope, outputWriter);
+            }
+            return;
+        } else if (model instanceof Object[]) {
+            var elements = (Object[]) model;
+            for (int i = start; i < end; i++) {
+                var listElement = elements[i];
+                if (i > 0 && separatorPart != null) {
+                    separatorPart.render(listElement, scope, outputWriter);
+                }
+                mainPart.render(listElement, scope, outputWriter);
+            }
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            var listElement = elementAt(model, i);
+            if (i > 0 && separatorPart != null) {
+                separatorPart.render(listElement, scope, outputWriter);
+            }
+            mainPart.render(listElement, scope, outputWriter);
+        }
+    }
+
+    /**
+     * Splits the elements in chunks that are rendered on the pool, each to its own buffer and in its own copy of the
+     * scope chain, so no two threads touch the same scope. The buffers are then written to the output in order.
+     */
+    private void renderInParallel(Object model, int size, Renderable mainPart, Renderable separatorPart, Scope scope, NestedRenderer node, Writer outputWriter) {
+        int chunkCount = Math.min(size, parallelLoopPool.getParallelism() * 4);
+        int chunkSize = (size + chunkCount - 1) / chunkCount;
+        var chunks = new ArrayList<ForkJoinTask<StringBuilder>>();
+        for (int start = 0; start < size; start += chunkSize) {
+            int chunkStart = start;
+            int chunkEnd = Math.min(size, start + chunkSize);
+            var chunkScope = new Scope(scope.copy());
+            chunks.add(parallelLoopPool.submit(() -> {
+                var chunkOutput = new StringBuilderWriter(new StringBuilder());
+                renderByIndex(model, chunkStart, chunkEnd, mainPart, separatorPart, chunkScope, chunkOutput);
+                return chunkOutput.stringBuilder;
+            }));
+        }
+        try {
+            for (var chunk : chunks) {
+                outputWriter.append(chunk.join());
+            }
+        } catch (IOException e) {
+            throw new SoutException(node.position(), e);
+        }
+    }
 }
@@ -0,0 +1,210 @@
+package com.laamella.sout;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The base class of templates that were compiled to Java source by {@link SoutCompiler}, for example by the sout Maven plugin.
+ * A compiled template renders like a {@link SoutTemplate} made from the same text with the same delimiters and no custom
+ * renderers, but it isn't parsed when the program starts, and its loops and conditions are plain Java code.
+ * <p>
+ * The protected methods and {@link Name} are meant for the generated code.
+ */
+public abstract class CompiledTemplate {
+    private static final NameResolver nameResolver = new NameResolver(null);
+
+    /**
+     * A name in the template, with its position for error messages.
+     */
+    public static final class Name {
+        private final String name;
+        final NamePath path;
+        private final Position position;
+
+        public Name(String name, int row, int column) {
+            this(name, new NamePath(name), new Position(column, row));
+        }
+
+        /**
+         * @param path the path of a node in a template, which may have been bound to the type of the model.
+         */
+        Name(String name, NamePath path, Position position) {
+            this.name = name;
+            this.path = path;
+            this.position = position;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * For the generated subclasses.
+     */
+    protected CompiledTemplate() {
+    }
+
+    /**
+     * Render the template.
+     *
+     * @param model        the model containing the data that should be filled in the template.
+     * @param outputWriter where the result will be written.
+     * @throws SoutException when something goes wrong with rendering the template.
+     */
+    public void render(Object model, Writer outputWriter) {
+        requireNonNull(outputWriter);
+        try {
+            renderModel(model, outputWriter);
+        } catch (IOException e) {
+            throw new SoutException(new Position(0, 0), e);
+        }
+    }
+
+    /**
+     * Render the template to a String.
+     *
+     * @throws SoutException when something goes wrong with rendering the template.
+     */
+    public String render(Object model) {
+        var outputWriter = new StringBuilderWriter(new StringBuilder());
+        render(model, outputWriter);
+        return outputWriter.toString();
+    }
+
+    protected abstract void renderModel(Object model, Writer outputWriter) throws IOException;
+
+    /**
+     * @return the strings that the generated code packed into parts, each written as its length, a colon, and its characters.
+     * Packing keeps the constants of big templates within the limits of a class file.
+     */
+    protected static String[] unpack(String... parts) {
+        var packed = String.join("", parts);
+        var strings = new ArrayList<String>();
+        int start = 0;
+        while (start < packed.length()) {
+            int colon = packed.indexOf(':', start);
+            int end = colon + 1 + Integer.parseInt(packed, start, colon, 10);
+            strings.add(packed.substring(colon + 1, end));
+            start = end;
+        }
+        return strings.toArray(new String[0]);
+    }
+
+    /**
+     * @return the names that the generated code packed into parts, like {@link #unpack(String...)} does,
+     * with three strings for every name: the name, its row, and its column.
+     */
+    protected static Name[] names(String... parts) {
+        var strings = unpack(parts);
+        var names = new Name[strings.length / 3];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = new Name(strings[i * 3], Integer.parseInt(strings[i * 3 + 1]), Integer.parseInt(strings[i * 3 + 2]));
+        }
+        return names;
+    }
+
+    /**
+     * @return the names that the compiled tier passed to the hidden class that lookup belongs to.
+     * They share their paths with the tree of the template, so names that were bound to the type of the model stay bound.
+     */
+    static Name[] classData(MethodHandles.Lookup lookup) {
+        try {
+            return MethodHandles.classData(lookup, ConstantDescs.DEFAULT_NAME, Name[].class);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return texts encoded as UTF-8, so that they don't have to be encoded again for every render to a stream or buffer.
+     */
+    protected static byte[][] encode(String[] texts) {
+        var encoded = new byte[texts.length][];
+        for (int i = 0; i < texts.length; i++) {
+            encoded[i] = texts[i].getBytes(UTF_8);
+        }
+        return encoded;
+    }
+
+    /**
+     * Write a text of the template, using utf8Text when outputWriter encodes to UTF-8 anyway.
+     */
+    protected static void writeText(String text, byte[] utf8Text, Writer outputWriter) throws IOException {
+        if (outputWriter instanceof Utf8Writer) {
+            ((Utf8Writer) outputWriter).writeEncoded(utf8Text);
+            return;
+        }
+        outputWriter.write(text);
+    }
+
+    /**
+     * @return the value of name on model.
+     */
+    protected static Object resolve(Object model, Name name) {
+        var value = nameResolver.resolve(model, name.path);
+        if (value instanceof NameResolver.Failure) {
+            throw new SoutException(name.position, ((NameResolver.Failure) value).message());
+        }
+        return value;
+    }
+
+    /**
+     * Write the value of name on model, like {@link #writeValue(Object, Name, Writer)} does with the value from
+     * {@link #resolve(Object, Name)}, but numbers in fields and methods are written without boxing them.
+     */
+    protected static void writeName(Object model, Name name, Writer outputWriter) throws IOException {
+        var value = nameResolver.resolveOrWritePrimitive(model, name.path, outputWriter);
+        if (value == NameResolver.WRITTEN) {
+            return;
+        }
+        if (value instanceof NameResolver.Failure) {
+            throw new SoutException(name.position, ((NameResolver.Failure) value).message());
+        }
+        writeValue(value, name, outputWriter);
+    }
+
+    /**
+     * Write a value that was resolved for name.
+     */
+    protected static void writeValue(Object value, Name name, Writer outputWriter) throws IOException {
+        if (value == null) {
+            throw new SoutException(name.position, "Null value.");
+        }
+        ValueWriter.writeValue(value, outputWriter);
+    }
+
+    /**
+     * @return value when it is a list that can be walked by index without an iterator, otherwise null.
+     */
+    protected static List<?> randomAccessList(Object value) {
+        return value instanceof List && value instanceof RandomAccess ? (List<?>) value : null;
+    }
+
+    /**
+     * @return an iterator over value, which was resolved for name, or null if value can't be looped over.
+     */
+    protected static Iterator<?> iterator(Object value, Name name) {
+        if (value == null) {
+            throw new SoutException(name.position, "Trying to nest into null.");
+        }
+        return IteratorFactory.toStandardIterator(value);
+    }
+
+    /**
+     * @return an exception about name, to throw.
+     */
+    protected static SoutException fail(Name name, String message) {
+        return new SoutException(name.position, "%s", message);
+    }
+}
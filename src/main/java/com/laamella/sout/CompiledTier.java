@@ -0,0 +1,231 @@
+package com.laamella.sout;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The compiled tier of a template. After the template has been rendered often enough,
+ * its tree is turned into Java source by {@link SoutCompiler}, compiled in memory with javac, and loaded as a hidden class.
+ * From then on, renders run that straight-line code instead of walking the tree.
+ * <p>
+ * Compiling happens on a background thread, one template at a time, and renders walk the tree until it is done.
+ * When javac isn't there, because the java.compiler module isn't loaded or the runtime has no compiler,
+ * or when compiling fails, the template keeps walking the tree.
+ */
+final class CompiledTier {
+    private static final ExecutorService compilerThread = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "sout template compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicInteger classCount = new AtomicInteger();
+
+    private final Renderer root;
+    private final int threshold;
+    /**
+     * Not exact when rendering on multiple threads at once, which only means compiling starts a little later.
+     */
+    private int renders = 0;
+    private volatile CompiledTemplate compiled = null;
+
+    CompiledTier(Renderer root, int threshold) {
+        this.root = root;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return whether the template that starts at root renders the same when it is compiled.
+     * Compiled templates only render in the standard way, and include their partials as they were when they were compiled.
+     */
+    static boolean canCompile(Renderer root, SoutConfiguration configuration) {
+        return configuration.customNameRenderer == null
+                && configuration.customTypeRenderer == null
+                && configuration.customIteratorFactory == null
+                && configuration.formats.isEmpty()
+                && configuration.fragmentCaches.isEmpty()
+                && configuration.renderMetrics == null
+                && configuration.parallelLoopThreshold == 0
+                && !hasIncludes(root);
+    }
+
+    private static boolean hasIncludes(Renderable node) {
+        if (node instanceof IncludeRenderer) {
+            return true;
+        }
+        if (node instanceof ContainerRenderer) {
+            for (var child : ((ContainerRenderer) node).children) {
+                if (hasIncludes(child)) {
+                    return true;
+                }
+            }
+        } else if (node instanceof NestedRenderer) {
+            for (var part : ((NestedRenderer) node).parts) {
+                if (hasIncludes(part)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count a render, and start compiling when this is the render that reaches the threshold.
+     *
+     * @return the compiled template, or null while renders should walk the tree.
+     */
+    CompiledTemplate rendering() {
+        var compiledTemplate = compiled;
+        if (compiledTemplate == null && ++renders == threshold) {
+            compilerThread.execute(() -> compiled = compile(root));
+        }
+        return compiledTemplate;
+    }
+
+    /**
+     * @return the compiled template, or null if it isn't there (yet).
+     */
+    CompiledTemplate compiled() {
+        return compiled;
+    }
+
+    /**
+     * @return the template that starts at root as an instance of a hidden class, or null when that can't be done.
+     */
+    private static CompiledTemplate compile(Renderer root) {
+        try {
+            var className = "CompiledTier" + classCount.incrementAndGet();
+            var generator = new SoutCompiler.Generator(true);
+            var source = generator.generate(root, CompiledTier.class.getPackageName(), className);
+            var classBytes = Javac.compile(className, source);
+            var lookup = MethodHandles.lookup().defineHiddenClassWithClassData(classBytes, generator.names(), true);
+            return (CompiledTemplate) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            // Including the NoClassDefFoundError for a missing java.compiler module. The tree is used instead.
+            return null;
+        }
+    }
+
+    /**
+     * Everything that uses the java.compiler module, so that it is only loaded when compiling.
+     */
+    private static final class Javac {
+        /**
+         * The classes of sout that the generated code refers to, directly or through their signatures.
+         */
+        private static final List<String> SOUT_CLASSES = List.of(
+                "CompiledTemplate", "CompiledTemplate$Name", "SoutException", "Position", "NamePath", "NameResolver");
+
+        /**
+         * @return the class file of the class called className in this package, compiled from source.
+         */
+        static byte[] compile(String className, String source) throws IOException {
+            var compiler = ToolProvider.getSystemJavaCompiler();
+            if (compiler == null) {
+                throw new IOException("The runtime has no Java compiler.");
+            }
+            var packageName = CompiledTier.class.getPackageName();
+            var sourceFile = new SimpleJavaFileObject(URI.create("string:///" + packageName.replace('.', '/') + "/" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return source;
+                }
+            };
+            var output = new ByteArrayOutputStream();
+            var diagnostics = new StringWriter();
+            try (var fileManager = new SoutFileManager(compiler.getStandardFileManager(null, null, UTF_8), packageName, output)) {
+                var succeeded = compiler.getTask(diagnostics, fileManager, null, List.of("-proc:none", "-implicit:none"), null, List.of(sourceFile)).call();
+                if (!succeeded) {
+                    throw new IOException(diagnostics.toString());
+                }
+            }
+            return output.toByteArray();
+        }
+    }
+
+    /**
+     * Gives javac the classes of sout from wherever they were loaded from, and keeps the compiled class in memory.
+     */
+    private static final class SoutFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final String packageName;
+        private final OutputStream output;
+
+        SoutFileManager(StandardJavaFileManager fileManager, String packageName, OutputStream output) {
+            super(fileManager);
+            this.packageName = packageName;
+            this.output = output;
+        }
+
+        @Override
+        public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
+            if (location != StandardLocation.CLASS_PATH || !packageName.equals(this.packageName)) {
+                return super.list(location, packageName, kinds, recurse);
+            }
+            var classFiles = new ArrayList<JavaFileObject>();
+            if (kinds.contains(JavaFileObject.Kind.CLASS)) {
+                for (var className : Javac.SOUT_CLASSES) {
+                    classFiles.add(new SoutClassFile(packageName, className));
+                }
+            }
+            return classFiles;
+        }
+
+        @Override
+        public String inferBinaryName(Location location, JavaFileObject file) {
+            if (file instanceof SoutClassFile) {
+                return ((SoutClassFile) file).binaryName;
+            }
+            return super.inferBinaryName(location, file);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            return new SimpleJavaFileObject(URI.create("memory:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return output;
+                }
+            };
+        }
+    }
+
+    private static final class SoutClassFile extends SimpleJavaFileObject {
+        final String binaryName;
+        private final String className;
+
+        SoutClassFile(String packageName, String className) {
+            super(URI.create("sout:///" + packageName.replace('.', '/') + "/" + className + ".class"), Kind.CLASS);
+            this.binaryName = packageName + "." + className;
+            this.className = className;
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            var classFile = CompiledTier.class.getResourceAsStream(className + ".class");
+            if (classFile == null) {
+                throw new IOException("Can't read the class file of " + binaryName);
+            }
+            return classFile;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.laamella.sout;
+
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.stream.Collectors.joining;
+
+final class ContainerRenderer extends Renderer {
+    final Renderer[] children;
+
+    ContainerRenderer(LineStarts lineStarts, int offset, List<Renderer> children) {
+        super(lineStarts, offset);
+        this.children = children.toArray(new Renderer[0]);
+    }
+
+    @Override
+    public void render(Object model, Scope scope, Writer outputWriter) {
+        for (var child : children) {
+            child.render(model, scope, outputWriter);
+        }
+    }
+
+    @Override
+    void renderInt(int model, Scope scope, Writer outputWriter) {
+        for (var child : children) {
+            child.renderInt(model, scope, outputWriter);
+        }
+    }
+
+    @Override
+    void renderLong(long model, Scope scope, Writer outputWriter) {
+        for (var child : children) {
+            child.renderLong(model, scope, outputWriter);
+        }
+    }
+
+    @Override
+    void renderDouble(double model, Scope scope, Writer outputWriter) {
+        for (var child : children) {
+            child.renderDouble(model, scope, outputWriter);
+        }
+    }
+
+    @Override
+    int nodeCount() {
+        int count = 1;
+        for (var child : children) {
+            count += child.nodeCount();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.stream(children).map(Object::toString).collect(joining());
+    }
+}
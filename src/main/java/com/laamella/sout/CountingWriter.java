@@ -0,0 +1,44 @@
+package com.laamella.sout;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A Writer that passes everything on to another Writer, counting the characters.
+ */
+final class CountingWriter extends Writer {
+    private final Writer writer;
+    long count = 0;
+
+    CountingWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        writer.write(c);
+        count++;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        writer.write(chars, offset, length);
+        count += length;
+    }
+
+    @Override
+    public void write(String string, int offset, int length) throws IOException {
+        writer.write(string, offset, length);
+        count += length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
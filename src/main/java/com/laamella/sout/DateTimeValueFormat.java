@@ -0,0 +1,29 @@
+package com.laamella.sout;
+
+import java.io.Writer;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+
+/**
+ * Writes dates and times with a {@link DateTimeFormatter}, which is immutable and thread-safe.
+ */
+final class DateTimeValueFormat extends ValueFormat {
+    private final DateTimeFormatter formatter;
+
+    DateTimeValueFormat(DateTimeFormatter formatter) {
+        this.formatter = formatter;
+    }
+
+    @Override
+    boolean write(Object value, Writer outputWriter) {
+        if (!(value instanceof TemporalAccessor)) {
+            return false;
+        }
+        if (outputWriter instanceof StringBuilderWriter) {
+            formatter.formatTo((TemporalAccessor) value, ((StringBuilderWriter) outputWriter).stringBuilder);
+        } else {
+            formatter.formatTo((TemporalAccessor) value, outputWriter);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,77 @@
+package com.laamella.sout;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Writes numbers with a fixed amount of decimals, rounding half up.
+ * Doubles are rounded as the decimal number they are written as, like {@link BigDecimal#valueOf(double)},
+ * so 1.005 with two decimals is 1.01, even though the double is a little less than that.
+ */
+final class DecimalsFormat extends ValueFormat {
+    private static final long[] powersOfTen = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000};
+    /**
+     * Doubles that are smaller than this after scaling can be rounded to a long without losing precision.
+     */
+    private static final double maxExactScaled = 1L << 52;
+
+    private final int decimals;
+    private final long scale;
+
+    DecimalsFormat(int decimals) {
+        this.decimals = decimals;
+        this.scale = powersOfTen[decimals];
+    }
+
+    @Override
+    boolean write(Object value, Writer outputWriter) throws IOException {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            ValueWriter.writeLong(((Number) value).longValue(), outputWriter);
+            if (decimals > 0) {
+                outputWriter.write('.');
+                for (int i = 0; i < decimals; i++) {
+                    outputWriter.write('0');
+                }
+            }
+        } else if (value instanceof Double || value instanceof Float) {
+            writeDouble(((Number) value).doubleValue(), outputWriter);
+        } else if (value instanceof BigDecimal) {
+            outputWriter.write(((BigDecimal) value).setScale(decimals, RoundingMode.HALF_UP).toPlainString());
+        } else if (value instanceof BigInteger) {
+            outputWriter.write(new BigDecimal((BigInteger) value).setScale(decimals).toPlainString());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void writeDouble(double value, Writer outputWriter) throws IOException {
+        double scaled = Math.abs(value) * scale;
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            outputWriter.write(Double.toString(value));
+            return;
+        }
+        // The scaled double can differ from the scaled decimal by a few ulps.
+        // Only when that is too close to halfway to know which way to round, the decimal is rounded instead.
+        double scaledFraction = scaled - Math.floor(scaled);
+        if (scaled >= maxExactScaled || Math.abs(scaledFraction - 0.5) <= 4 * Math.ulp(scaled)) {
+            outputWriter.write(BigDecimal.valueOf(value).setScale(decimals, RoundingMode.HALF_UP).toPlainString());
+            return;
+        }
+        long rounded = Math.round(scaled);
+        if (value < 0 && rounded != 0) {
+            outputWriter.write('-');
+        }
+        ValueWriter.writeLong(rounded / scale, outputWriter);
+        if (decimals > 0) {
+            outputWriter.write('.');
+            long fraction = rounded % scale;
+            for (long digit = scale / 10; digit > 0; digit /= 10) {
+                outputWriter.write((char) ('0' + fraction / digit % 10));
+            }
+        }
+    }
+}
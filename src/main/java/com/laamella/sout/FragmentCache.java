@@ -0,0 +1,216 @@
+package com.laamella.sout;
+
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps the output of nestings, so that rendering a nesting on a model it has seen before only copies the stored output.
+ * Attach it to nestings by name with {@link SoutConfiguration#setFragmentCache(String, FragmentCache)}.
+ * <p>
+ * Only use this for nestings whose output depends on nothing but the value they nest into:
+ * not on the model around them, on variables in the {@link Scope}, or on anything that changes.
+ * Partials that they include may change: fragments that were rendered with a partial that has been set again since
+ * are not used anymore, and are dropped when they are the least recently used.
+ * Booleans and loops with a lead-in and lead-out render parts on the model around them, so they are never cached.
+ * An {@link IncrementalRenderer} doesn't use fragment caches, since it needs to see every name a nesting reads.
+ * <p>
+ * Fragments are kept with the value they were rendered on, or its key from the key function, which can't be collected
+ * while its fragment is kept. Use a key function that returns a small id for values that hold on to a lot of memory.
+ * <p>
+ * The amount of fragments kept, and their total size in characters, are limited.
+ * When a limit is exceeded, the least recently used fragments are dropped.
+ * A cache can be shared by multiple nestings and templates, and used from multiple threads at once.
+ */
+public class FragmentCache {
+    /**
+     * How to tell if a value was seen before.
+     */
+    public enum Keying {
+        /**
+         * It is the same object.
+         * The cache holds on to the objects until their fragments are dropped, so they can't be collected before that.
+         */
+        IDENTITY,
+        /**
+         * It is equal to a value that was seen before. Its hashCode and equals are called on every render.
+         * The cache holds on to the first of the equal values until its fragment is dropped.
+         */
+        EQUALS
+    }
+
+    private final Keying keying;
+    private final Function<Object, ?> keyFunction;
+    private final int maxFragments;
+    private final long maxTotalSize;
+
+    // Guarded by itself.
+    private final LinkedHashMap<Key, char[]> fragments = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * A fragment is known by the nesting that rendered it, the value it was rendered on,
+     * and for nestings that include partials, the {@link Partial#generation()} it was rendered in.
+     */
+    private static final class Key {
+        final NestedRenderer node;
+        final Object value;
+        final boolean byIdentity;
+        final long generation;
+        final int hash;
+
+        Key(NestedRenderer node, Object value, boolean byIdentity, long generation) {
+            this.node = node;
+            this.value = value;
+            this.byIdentity = byIdentity;
+            this.generation = generation;
+            this.hash = 31 * (31 * System.identityHashCode(node) + Long.hashCode(generation)) + (byIdentity ? System.identityHashCode(value) : Objects.hashCode(value));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            var other = (Key) o;
+            return node == other.node && generation == other.generation && (byIdentity ? value == other.value : Objects.equals(value, other.value));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * @param keying       how to tell if a value was seen before.
+     * @param maxFragments the maximum amount of fragments to keep.
+     * @param maxTotalSize the maximum total size, in characters, of the fragments to keep.
+     */
+    public FragmentCache(Keying keying, int maxFragments, long maxTotalSize) {
+        this(requireNonNull(keying), null, maxFragments, maxTotalSize);
+    }
+
+    /**
+     * @param keyFunction  makes a key out of a value. Values with equal keys share a fragment.
+     *                     When it returns null, the fragment is rendered and not stored.
+     * @param maxFragments the maximum amount of fragments to keep.
+     * @param maxTotalSize the maximum total size, in characters, of the fragments to keep.
+     */
+    public FragmentCache(Function<Object, ?> keyFunction, int maxFragments, long maxTotalSize) {
+        this(Keying.EQUALS, requireNonNull(keyFunction), maxFragments, maxTotalSize);
+    }
+
+    private FragmentCache(Keying keying, Function<Object, ?> keyFunction, int maxFragments, long maxTotalSize) {
+        if (maxFragments < 1 || maxTotalSize < 1) {
+            throw new IllegalArgumentException("The limits must be at least 1.");
+        }
+        this.keying = keying;
+        this.keyFunction = keyFunction;
+        this.maxFragments = maxFragments;
+        this.maxTotalSize = maxTotalSize;
+    }
+
+    /**
+     * @param generation the {@link Partial#generation()} when node includes partials, otherwise 0,
+     *                   so fragments that were rendered with partials that have been replaced since are not used.
+     * @return the key for the fragment that node renders for value, or null if it should not be stored.
+     */
+    Object keyFor(NestedRenderer node, Object value, long generation) {
+        if (keyFunction != null) {
+            value = keyFunction.apply(value);
+            if (value == null) {
+                return null;
+            }
+        }
+        return new Key(node, value, keying == Keying.IDENTITY, generation);
+    }
+
+    /**
+     * @return the stored fragment for key, or null if there is none.
+     */
+    char[] get(Object key) {
+        char[] fragment;
+        synchronized (fragments) {
+            fragment = fragments.get(key);
+        }
+        if (fragment == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return fragment;
+    }
+
+    void put(Object key, char[] fragment) {
+        synchronized (fragments) {
+            var old = fragments.put((Key) key, fragment);
+            if (old != null) {
+                totalSize -= old.length;
+            }
+            totalSize += fragment.length;
+            var iterator = fragments.values().iterator();
+            while (totalSize > maxTotalSize || fragments.size() > maxFragments) {
+                totalSize -= iterator.next().length;
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * @return how often a nesting was copied from this cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return how often a nesting was rendered because it wasn't in this cache.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return how often a fragment was dropped to stay within the limits.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the share of lookups that were hits, from 0 to 1. 0 when nothing was looked up yet.
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the amount of fragments that are kept now.
+     */
+    public int size() {
+        synchronized (fragments) {
+            return fragments.size();
+        }
+    }
+
+    /**
+     * Drop all fragments, for example when the data they were rendered from has changed.
+     */
+    public void clear() {
+        synchronized (fragments) {
+            fragments.clear();
+            totalSize = 0;
+        }
+    }
+}
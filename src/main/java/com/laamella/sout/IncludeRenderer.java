@@ -0,0 +1,48 @@
+package com.laamella.sout;
+
+import java.io.Writer;
+
+final class IncludeRenderer extends Renderer {
+    final Partial partial;
+
+    IncludeRenderer(Partial partial, LineStarts lineStarts, int offset) {
+        super(lineStarts, offset);
+        this.partial = partial;
+    }
+
+    @Override
+    public void render(Object model, Scope scope, Writer outputWriter) {
+        partialRoot(outputWriter).render(model, scope, outputWriter);
+    }
+
+    @Override
+    void renderInt(int model, Scope scope, Writer outputWriter) {
+        partialRoot(outputWriter).renderInt(model, scope, outputWriter);
+    }
+
+    @Override
+    void renderLong(long model, Scope scope, Writer outputWriter) {
+        partialRoot(outputWriter).renderLong(model, scope, outputWriter);
+    }
+
+    @Override
+    void renderDouble(double model, Scope scope, Writer outputWriter) {
+        partialRoot(outputWriter).renderDouble(model, scope, outputWriter);
+    }
+
+    /**
+     * @return the current version of the partial, which is then rendered completely, even when it is replaced halfway.
+     */
+    private Renderer partialRoot(Writer outputWriter) {
+        var root = partial.root();
+        if (outputWriter instanceof IncrementalWriter) {
+            ((IncrementalWriter) outputWriter).included(partial, root);
+        }
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return "❰@" + partial.name + "❱";
+    }
+}
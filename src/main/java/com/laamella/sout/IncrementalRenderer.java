@@ -0,0 +1,62 @@
+package com.laamella.sout;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Renders a template again and again, copying the output of nestings that haven't changed since the previous render.
+ * This is meant for things like dashboards, that render a big template often while only a few values change.
+ * <p>
+ * While rendering a nesting, every name that is resolved is remembered, together with the object it was resolved on,
+ * and the value that came out. On the next render, a nesting in the same place is not rendered again
+ * when resolving those names again gives the same values: the same objects, or equal strings, numbers, booleans and enums.
+ * This works best when changed values are new objects, or are {@link Versioned}.
+ * Objects that are changed in place, like lists, must be {@link Versioned}, or their changes can be missed.
+ * <p>
+ * What custom renderers use can't be known, so nestings in which a custom renderer rendered something
+ * are always rendered again. Names and nestings that the custom renderers leave alone are followed as usual.
+ * Loops inside nestings are rendered one element after the other, even when parallel loops are configured.
+ * <p>
+ * An IncrementalRenderer remembers one previous render, so it can't be used from multiple threads at once.
+ */
+public class IncrementalRenderer {
+    private final SoutTemplate template;
+    private final NameResolver nameResolver;
+    private IncrementalWriter.Section previousRoot = null;
+    private int reusedSections = 0;
+    private int renderedSections = 0;
+
+    public IncrementalRenderer(SoutTemplate template) {
+        this.template = requireNonNull(template);
+        this.nameResolver = new NameResolver(template.metrics);
+    }
+
+    /**
+     * @return the rendered template.
+     * @throws SoutException when something goes wrong with rendering the template.
+     * The next render will then render everything again.
+     */
+    public String render(Object model) {
+        template.checkModel(model);
+        var writer = new IncrementalWriter(previousRoot, nameResolver);
+        previousRoot = null;
+        template.renderRoot(model, writer);
+        previousRoot = writer.root;
+        reusedSections = writer.reusedSections;
+        renderedSections = writer.renderedSections;
+        return writer.output.toString();
+    }
+
+    /**
+     * @return how many nestings were copied from the previous render in the last render.
+     */
+    public int getReusedSections() {
+        return reusedSections;
+    }
+
+    /**
+     * @return how many nestings were rendered in the last render.
+     */
+    public int getRenderedSections() {
+        return renderedSections;
+    }
+}
@@ -0,0 +1,259 @@
+package com.laamella.sout;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Writer that {@link IncrementalRenderer} renders to.
+ * Besides collecting the output, it remembers the output of every nesting ("section")
+ * and which names were resolved on which objects while rendering it.
+ * Renderers that see this writer report their resolutions to it, and ask it if a section can be copied from the previous render.
+ */
+final class IncrementalWriter extends Writer {
+    /**
+     * Resolves dependencies again to see if they changed. It reports to the template's metrics, like rendering does.
+     */
+    private final NameResolver nameResolver;
+
+    final StringBuilder output = new StringBuilder();
+    /**
+     * The top of the section tree. It has no node, and holds the sections at the top level of the template.
+     */
+    final Section root;
+    private Section current;
+    int reusedSections = 0;
+    int renderedSections = 0;
+
+    /**
+     * A name that was resolved on an object, and what came out.
+     */
+    private static final class Dependency {
+        final Object target;
+        final NamePath path;
+        final Object value;
+        final long version;
+
+        Dependency(Object target, NamePath path, Object value) {
+            this.target = target;
+            this.path = path;
+            this.value = value;
+            this.version = value instanceof Versioned ? ((Versioned) value).getVersion() : 0;
+        }
+    }
+
+    /**
+     * A partial that was included, and the version of it that was rendered.
+     */
+    private static final class Inclusion {
+        final Partial partial;
+        final Renderer root;
+
+        Inclusion(Partial partial, Renderer root) {
+            this.partial = partial;
+            this.root = root;
+        }
+    }
+
+    static final class Section {
+        final NestedRenderer node;
+        final Object parentModel;
+        /**
+         * The first dependency is the nesting's own name, resolved on parentModel.
+         */
+        final List<Dependency> dependencies = new ArrayList<>();
+        final List<Inclusion> inclusions = new ArrayList<>();
+        final List<Section> children = new ArrayList<>();
+        /**
+         * Whether something was rendered in this section whose inputs are not recorded, like a custom renderer.
+         * Such a section is always rendered again.
+         */
+        boolean reusable = true;
+        String text;
+        // Only used while rendering.
+        private Section parent;
+        private Section previous;
+        private int start;
+
+        Section(NestedRenderer node, Object parentModel, Section previous) {
+            this.node = node;
+            this.parentModel = parentModel;
+            this.previous = previous;
+        }
+
+        Object model() {
+            return dependencies.get(0).value;
+        }
+    }
+
+    /**
+     * @param previousRoot the root of the previous render, or null if there is none.
+     */
+    IncrementalWriter(Section previousRoot, NameResolver nameResolver) {
+        this.nameResolver = nameResolver;
+        root = new Section(null, null, previousRoot);
+        current = root;
+    }
+
+    /**
+     * Remember that path was resolved to value on target, if that happened inside a section.
+     */
+    void resolved(Object target, NamePath path, Object value) {
+        if (current != root) {
+            current.dependencies.add(new Dependency(target, path, value));
+        }
+    }
+
+    /**
+     * Remember that partialRoot was rendered for partial, if that happened inside a section,
+     * so that the section is rendered again when the partial is replaced.
+     */
+    void included(Partial partial, Renderer partialRoot) {
+        if (current != root) {
+            current.inclusions.add(new Inclusion(partial, partialRoot));
+        }
+    }
+
+    /**
+     * Remember that something was rendered whose inputs can't be recorded, like the output of a custom renderer,
+     * so that the sections around it are rendered again next time.
+     */
+    void untracked() {
+        for (var section = current; section != root && section.reusable; section = section.parent) {
+            section.reusable = false;
+        }
+    }
+
+    /**
+     * When node was rendered on parentModel at this point in the previous render, and nothing it used has changed,
+     * write its previous output again.
+     *
+     * @return whether the previous output was written.
+     */
+    boolean reuseSection(NestedRenderer node, Object parentModel) {
+        var candidate = previousSectionAtThisPoint();
+        if (candidate == null || candidate.node != node || !candidate.reusable || !isUnchanged(candidate, parentModel)) {
+            return false;
+        }
+        output.append(candidate.text);
+        current.children.add(candidate);
+        reusedSections++;
+        return true;
+    }
+
+    /**
+     * Start recording a section for node, which was resolved to nestedModel on parentModel.
+     * Sections inside it are matched against the ones that were inside it in the previous render.
+     */
+    void beginSection(NestedRenderer node, Object parentModel, NamePath path, Object nestedModel) {
+        var candidate = previousSectionAtThisPoint();
+        var section = new Section(node, parentModel, candidate != null && candidate.node == node ? candidate : null);
+        section.dependencies.add(new Dependency(parentModel, path, nestedModel));
+        section.parent = current;
+        section.start = output.length();
+        current = section;
+    }
+
+    void endSection() {
+        var section = current;
+        section.text = output.substring(section.start);
+        current = section.parent;
+        current.children.add(section);
+        section.parent = null;
+        section.previous = null;
+        renderedSections++;
+    }
+
+    /**
+     * @return the section that was in the same place in the previous render.
+     * Sections are matched by the order they were rendered in, within their parent.
+     */
+    private Section previousSectionAtThisPoint() {
+        var previous = current.previous;
+        int index = current.children.size();
+        if (previous == null || index >= previous.children.size()) {
+            return null;
+        }
+        return previous.children.get(index);
+    }
+
+    /**
+     * @return whether resolving the dependencies of section again gives the same values.
+     * Objects that were the section's parent model are replaced by parentModel,
+     * because that is what the section would now be rendered on.
+     */
+    private boolean isUnchanged(Section section, Object parentModel) {
+        var oldModel = section.model();
+        Object model = null;
+        for (int i = 0; i < section.dependencies.size(); i++) {
+            var dependency = section.dependencies.get(i);
+            var target = dependency.target;
+            if (target == section.parentModel) {
+                target = parentModel;
+            } else if (i > 0 && target == oldModel) {
+                target = model;
+            }
+            var value = nameResolver.resolve(target, dependency.path);
+            if (value instanceof NameResolver.Failure || !isSame(dependency, value)) {
+                return false;
+            }
+            if (i == 0) {
+                model = value;
+            }
+        }
+        for (var inclusion : section.inclusions) {
+            if (inclusion.partial.root() != inclusion.root) {
+                return false;
+            }
+        }
+        for (var child : section.children) {
+            var childParentModel = child.parentModel;
+            if (childParentModel == section.parentModel) {
+                childParentModel = parentModel;
+            } else if (childParentModel == oldModel) {
+                childParentModel = model;
+            }
+            if (!isUnchanged(child, childParentModel)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSame(Dependency dependency, Object value) {
+        if (value != dependency.value && !(isValue(value) && value.equals(dependency.value))) {
+            return false;
+        }
+        return !(value instanceof Versioned) || ((Versioned) value).getVersion() == dependency.version;
+    }
+
+    /**
+     * @return whether o is of an immutable type that is compared with equals, like a String or a boxed number.
+     */
+    private static boolean isValue(Object o) {
+        return o instanceof String || o instanceof Number || o instanceof Boolean || o instanceof Character || o instanceof Enum;
+    }
+
+    @Override
+    public void write(int c) {
+        output.append((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        output.append(chars, offset, length);
+    }
+
+    @Override
+    public void write(String string, int offset, int length) {
+        output.append(string, offset, offset + length);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
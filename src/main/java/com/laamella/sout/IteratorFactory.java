@@ -1,11 +1,10 @@
 package com.laamella.sout;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Stream;
 
-import static java.util.Arrays.stream;
-
 /**
  * This iterator factory is always in use, creating iterators for the collections, arrays, etc. in the JDK.
  */
@@ -18,15 +17,36 @@ class IteratorFactory implements CustomIteratorFactory {
 
     @Override
     public Iterator<?> toIterator(Object model, Scope scope, Position position) {
-        Iterator<?> iterator = customIteratorFactory.toIterator(model, scope, position);
-        if (iterator != null) {
-            return iterator;
-        } else if (model == null) {
+        if (customIteratorFactory != null) {
+            Iterator<?> iterator = customIteratorFactory.toIterator(model, scope, position);
+            if (iterator != null) {
+                return iterator;
+            }
+        }
+        if (model == null) {
             throw new SoutException(position, "Trying to nest into null.");
-        } else if (model instanceof List) {
+        }
+        return toStandardIterator(model);
+    }
+
+    /**
+     * @return the iterator that the custom iterator factory makes for model, or null if there is none.
+     */
+    Iterator<?> toCustomIterator(Object model, Scope scope, Renderer node) {
+        if (customIteratorFactory == null) {
+            return null;
+        }
+        return customIteratorFactory.toIterator(model, scope, node.position());
+    }
+
+    /**
+     * @return an iterator for the JDK collection, array, etc. in model, or null if it isn't one.
+     */
+    static Iterator<?> toStandardIterator(Object model) {
+        if (model instanceof List) {
             return ((List<?>) model).iterator();
         } else if (model instanceof Object[]) {
-            return stream((Object[]) model).iterator();
+            return Arrays.asList((Object[]) model).iterator();
         } else if (model instanceof boolean[]) {
             return new BooleanArrayIterator((boolean[]) model);
         } else if (model instanceof byte[]) {
@@ -36,7 +56,7 @@ class IteratorFactory implements CustomIteratorFactory {
         } else if (model instanceof short[]) {
             return new ShortArrayIterator((short[]) model);
         } else if (model instanceof int[]) {
-            return stream((int[]) model).boxed().iterator();
+            return new IntegerArrayIterator((int[]) model);
         } else if (model instanceof long[]) {
             return new LongArrayIterator((long[]) model);
         } else if (model instanceof float[]) {
@@ -155,6 +175,23 @@ class IteratorFactory implements CustomIteratorFactory {
         }
     }
 
+    static class IntegerArrayIterator implements Iterator<Integer> {
+        final int[] a;
+        int i = 0;
+
+        IntegerArrayIterator(int[] a) {
+            this.a = a;
+        }
+
+        public boolean hasNext() {
+            return i < a.length;
+        }
+
+        public Integer next() {
+            return a[i++];
+        }
+    }
+
     static class LongArrayIterator implements Iterator<Long> {
         final long[] a;
         int i = 0;
@@ -0,0 +1,63 @@
+package com.laamella.sout;
+
+import java.util.Arrays;
+
+/**
+ * The offsets in a template where its lines start.
+ * The nodes of a template only store an offset, and share this table to turn it into a {@link Position},
+ * which is only needed when something needs to be reported.
+ */
+final class LineStarts {
+    private int[] starts;
+    private int count;
+
+    LineStarts() {
+        starts = new int[16];
+        count = 1;
+    }
+
+    /**
+     * @param starts the offsets from {@link #toArray()}.
+     */
+    LineStarts(int[] starts) {
+        this.starts = starts;
+        this.count = starts.length;
+    }
+
+    /**
+     * Record that a line starts at offset. Lines must be added in order.
+     */
+    void add(int offset) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = offset;
+    }
+
+    /**
+     * Drop the unused room in the table, for when no more lines will be added.
+     */
+    void trim() {
+        starts = Arrays.copyOf(starts, count);
+    }
+
+    /**
+     * @return the offsets where lines start. The first is always 0.
+     */
+    int[] toArray() {
+        return Arrays.copyOf(starts, count);
+    }
+
+    /**
+     * @return the row and column of offset. A negative offset means "no position", and gives 0:0.
+     */
+    Position positionOf(int offset) {
+        if (offset < 0) {
+            return new Position(0, 0);
+        }
+        int index = Arrays.binarySearch(starts, 0, count, offset);
+        // When the offset is not a line start, binarySearch returns (-(insertion point) - 1).
+        int row = index >= 0 ? index : -index - 2;
+        return new Position(offset - starts[row] + 1, row + 1);
+    }
+}
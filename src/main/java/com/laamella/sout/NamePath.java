@@ -0,0 +1,77 @@
+package com.laamella.sout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A name like "user.address.city", split into its parts once, when the template is parsed.
+ * Every part remembers which accessor it used for the last few classes it was resolved on,
+ * so resolving it again on one of those classes is a class check and a call.
+ */
+final class NamePath {
+    final String name;
+    final Segment[] segments;
+
+    NamePath(String name) {
+        this.name = name;
+        var segments = new ArrayList<Segment>();
+        for (String part : name.split("\\.")) {
+            // An empty part means "the model itself", so it doesn't need resolving.
+            if (!part.isBlank()) {
+                segments.add(new Segment(part));
+            }
+        }
+        this.segments = segments.toArray(new Segment[0]);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    static final class Segment {
+        /**
+         * When more classes than this are seen, the remaining ones go straight to {@link NameResolver#findAccessor(Class, String)}.
+         */
+        private static final int MAX_CACHED_CLASSES = 4;
+        private static final CacheEntry[] EMPTY = new CacheEntry[0];
+
+        final String name;
+        /**
+         * The accessor for the declared type of the model, when the template was bound to a model type.
+         * It is used for every model, without checking its class.
+         */
+        NameResolver.Accessor boundAccessor = null;
+        private volatile CacheEntry[] cache = EMPTY;
+
+        Segment(String name) {
+            this.name = name;
+        }
+
+        NameResolver.Accessor accessorFor(Class<?> type) {
+            var entries = cache;
+            for (var entry : entries) {
+                if (entry.type == type) {
+                    return entry.accessor;
+                }
+            }
+            var accessor = NameResolver.findAccessor(type, name);
+            if (entries.length < MAX_CACHED_CLASSES) {
+                var newEntries = Arrays.copyOf(entries, entries.length + 1);
+                newEntries[entries.length] = new CacheEntry(type, accessor);
+                cache = newEntries;
+            }
+            return accessor;
+        }
+    }
+
+    private static final class CacheEntry {
+        final Class<?> type;
+        final NameResolver.Accessor accessor;
+
+        CacheEntry(Class<?> type, NameResolver.Accessor accessor) {
+            this.type = type;
+            this.accessor = accessor;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.laamella.sout;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.DateTimeException;
+
+final class NameRenderer extends Renderer {
+    final String name;
+    final NamePath path;
+    private final NameResolver nameResolver;
+    private final CustomNameRenderer customNameRenderer;
+    private final CustomTypeRenderer customTypeRenderer;
+    private final ValueFormat format;
+    /**
+     * Where to report how long rendering took. null when nobody is measuring.
+     */
+    private final NodeMetrics metrics;
+    /**
+     * Whether a primitive value is written as is, which is when nothing else gets to see it.
+     */
+    private final boolean writesPrimitives;
+
+    NameRenderer(NamePath path, LineStarts lineStarts, int offset, NameResolver nameResolver, CustomNameRenderer customNameRenderer, CustomTypeRenderer customTypeRenderer, ValueFormat format, NodeMetrics metrics) {
+        super(lineStarts, offset);
+        this.format = format;
+        this.metrics = metrics;
+        this.name = path.name;
+        this.path = path;
+        this.customNameRenderer = customNameRenderer;
+        this.nameResolver = nameResolver;
+        this.customTypeRenderer = customTypeRenderer;
+        this.writesPrimitives = customNameRenderer == null && customTypeRenderer == null && format == null;
+    }
+
+    @Override
+    public void render(Object model, Scope scope, Writer outputWriter) {
+        SlowNodeEvent event = null;
+        if (SlowNodeEvent.isRecorded()) {
+            event = new SlowNodeEvent();
+            event.begin();
+        }
+        long start = metrics == null ? 0 : System.nanoTime();
+        renderName(model, scope, outputWriter);
+        if (metrics != null) {
+            metrics.rendered(System.nanoTime() - start);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.name = name;
+            event.position = position().toString();
+            event.commit();
+        }
+    }
+
+    private void renderName(Object model, Scope scope, Writer outputWriter) {
+        try {
+            if (customNameRenderer != null && customNameRenderer.render(name, null, model, scope, position(), outputWriter)) {
+                renderedByCustomRenderer(outputWriter);
+                return;
+            }
+            Object subModel;
+            if (writesPrimitives && !(outputWriter instanceof IncrementalWriter)) {
+                // A number in a field or method is written without boxing it.
+                subModel = nameResolver.resolveOrWritePrimitive(model, path, outputWriter);
+                if (subModel == NameResolver.WRITTEN) {
+                    return;
+                }
+            } else {
+                subModel = nameResolver.resolve(model, path);
+            }
+            if (subModel instanceof NameResolver.Failure) {
+                throw new SoutException(position(), ((NameResolver.Failure) subModel).message());
+            }
+            if (outputWriter instanceof IncrementalWriter) {
+                ((IncrementalWriter) outputWriter).resolved(model, path, subModel);
+            }
+            if (customTypeRenderer != null && customTypeRenderer.render(name, null, subModel, scope, null, null, position(), outputWriter)) {
+                renderedByCustomRenderer(outputWriter);
+                return;
+            }
+            if (subModel == null) {
+                throw new SoutException(position(), "Null value.");
+            }
+            if (format != null && format.write(subModel, outputWriter)) {
+                return;
+            }
+            ValueWriter.writeValue(subModel, outputWriter);
+        } catch (IOException | DateTimeException e) {
+            throw new SoutException(position(), e);
+        }
+    }
+
+    /**
+     * @return whether this renders the model itself in the standard way, so a primitive model can be written as is.
+     */
+    private boolean rendersPlainModel() {
+        return path.segments.length == 0 && customNameRenderer == null && customTypeRenderer == null && format == null;
+    }
+
+    @Override
+    void renderInt(int model, Scope scope, Writer outputWriter) {
+        if (!rendersPlainModel()) {
+            super.renderInt(model, scope, outputWriter);
+            return;
+        }
+        try {
+            ValueWriter.writeLong(model, outputWriter);
+        } catch (IOException e) {
+            throw new SoutException(position(), e);
+        }
+    }
+
+    @Override
+    void renderLong(long model, Scope scope, Writer outputWriter) {
+        if (!rendersPlainModel()) {
+            super.renderLong(model, scope, outputWriter);
+            return;
+        }
+        try {
+            ValueWriter.writeLong(model, outputWriter);
+        } catch (IOException e) {
+            throw new SoutException(position(), e);
+        }
+    }
+
+    @Override
+    void renderDouble(double model, Scope scope, Writer outputWriter) {
+        if (!rendersPlainModel()) {
+            super.renderDouble(model, scope, outputWriter);
+            return;
+        }
+        try {
+            ValueWriter.writeDouble(model, outputWriter);
+        } catch (IOException e) {
+            throw new SoutException(position(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "❰" + name + "❱";
+    }
+}
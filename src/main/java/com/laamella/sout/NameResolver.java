@@ -1,7 +1,19 @@
 package com.laamella.sout;
 
-import java.lang.reflect.InvocationTargetException;
+import com.laamella.sout.RenderMetrics.ResolutionStrategy;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import static com.laamella.sout.NameResolver.Result.fail;
@@ -12,6 +24,25 @@ import static com.laamella.sout.NameResolver.Result.succeed;
  */
 @SuppressWarnings("unchecked")
 class NameResolver {
+    /**
+     * The accessors that have been looked up, per class and per name.
+     * Names that could not be found are stored too, as {@link Accessor#NONE}, so they are not looked up again.
+     */
+    private static final ClassValue<Map<String, Accessor>> accessorsPerClass = new ClassValue<>() {
+        @Override
+        protected Map<String, Accessor> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /**
+     * Where measurements go. null when nobody is measuring.
+     */
+    private final RenderMetrics metrics;
+
+    NameResolver(RenderMetrics metrics) {
+        this.metrics = metrics;
+    }
 
     static class Result {
         final String message;
@@ -33,101 +64,355 @@ class NameResolver {
         }
     }
 
+    /**
+     * What {@link #resolve(Object, NamePath)} returns when it fails.
+     * The message is only formatted when it is asked for.
+     */
+    static final class Failure {
+        private final String format;
+        private final Object[] params;
+
+        private Failure(String format, Object[] params) {
+            this.format = format;
+            this.params = params;
+        }
+
+        String message() {
+            return String.format(format, params);
+        }
+    }
+
+    /**
+     * A way to read a value called "name" from an object of a specific class.
+     */
+    static class Accessor {
+        private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+        private static final MethodType LONG_GETTER_TYPE = MethodType.methodType(long.class, Object.class);
+        private static final MethodType DOUBLE_GETTER_TYPE = MethodType.methodType(double.class, Object.class);
+        static final Accessor NONE = new Accessor(null, null, null, Object.class, ResolutionStrategy.METHOD, null);
+
+        private final MethodHandle getter;
+        /**
+         * Reads the value as a long without boxing it, when it is a byte, short, int or long. Otherwise null.
+         */
+        private final MethodHandle longGetter;
+        /**
+         * Reads the value without boxing it, when it is a double. Otherwise null.
+         */
+        private final MethodHandle doubleGetter;
+        /**
+         * The class that declares the field or method, or Object when it is static.
+         */
+        private final Class<?> receiverType;
+        final ResolutionStrategy strategy;
+        /**
+         * The accessor of the next strategy that can read name, tried when this one throws. Null when there is none.
+         */
+        private Accessor next;
+        /**
+         * The declared type of the field or method, with its type arguments.
+         */
+        final Type type;
+
+        private Accessor(MethodHandle getter, MethodHandle longGetter, MethodHandle doubleGetter, Class<?> receiverType, ResolutionStrategy strategy, Type type) {
+            this.getter = getter;
+            this.longGetter = longGetter;
+            this.doubleGetter = doubleGetter;
+            this.receiverType = receiverType;
+            this.strategy = strategy;
+            this.type = type;
+        }
+
+        Object get(Object target) throws Throwable {
+            return getter.invokeExact(target);
+        }
+
+        /**
+         * @return whether this accessor can read from target. Always true for the class it was looked up on,
+         * but a name that was bound to a type may be resolved on something else.
+         */
+        boolean accepts(Object target) {
+            return receiverType.isInstance(target);
+        }
+
+        static Accessor of(MethodHandle handle, boolean isStatic, ResolutionStrategy strategy, Type type) {
+            if (isStatic) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            var valueType = handle.type().returnType();
+            MethodHandle longGetter = null;
+            MethodHandle doubleGetter = null;
+            if (valueType == int.class || valueType == long.class || valueType == short.class || valueType == byte.class) {
+                longGetter = handle.asType(LONG_GETTER_TYPE);
+            } else if (valueType == double.class) {
+                doubleGetter = handle.asType(DOUBLE_GETTER_TYPE);
+            }
+            var receiverType = handle.type().parameterType(0);
+            return new Accessor(handle.asType(GETTER_TYPE), longGetter, doubleGetter, receiverType, strategy, type);
+        }
+    }
+
+    /**
+     * What {@link #resolveOrWritePrimitive(Object, NamePath, Writer)} returns when it wrote the value.
+     */
+    static final Object WRITTEN = new Object();
+
     Result resolveComplexNameOnModel(Object model, String complexName) {
-        int dotIndex = complexName.indexOf('.');
-        if (dotIndex >= 0) {
-            Result nestedResult = resolveSimpleNameOnModel(model, complexName.substring(0, dotIndex));
-            if (!nestedResult.failed) {
-                return resolveComplexNameOnModel(nestedResult.value, complexName.substring(dotIndex + 1));
-            } else {
-                return nestedResult;
+        return resolvePathOnModel(model, new NamePath(complexName));
+    }
+
+    Result resolvePathOnModel(Object model, NamePath path) {
+        var value = resolve(model, path);
+        if (value instanceof Failure) {
+            return fail("%s", ((Failure) value).message());
+        }
+        return succeed(value);
+    }
+
+    /**
+     * The way renderers resolve names: it doesn't allocate anything unless resolving fails.
+     *
+     * @return the value of path on model, or a {@link Failure}.
+     */
+    Object resolve(Object model, NamePath path) {
+        Object value = model;
+        for (var segment : path.segments) {
+            value = resolveSimpleNameOnModel(value, segment);
+            if (value instanceof Failure) {
+                return value;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Resolve path like {@link #resolve(Object, NamePath)} does, but when its last segment is a field or method
+     * of an integer type or double, write its value to outputWriter without boxing it.
+     *
+     * @return {@link #WRITTEN} when the value was written, otherwise the value of path on model, or a {@link Failure}.
+     */
+    Object resolveOrWritePrimitive(Object model, NamePath path, Writer outputWriter) throws IOException {
+        if (path.segments.length == 0) {
+            return model;
+        }
+        var target = resolveParent(model, path);
+        if (target instanceof Failure) {
+            return target;
+        }
+        return writePrimitive(target, path, outputWriter);
+    }
+
+    /**
+     * Resolve all segments of path except the last one.
+     *
+     * @return the object to resolve the last segment on, or a {@link Failure}.
+     */
+    private Object resolveParent(Object model, NamePath path) {
+        Object value = model;
+        var segments = path.segments;
+        for (int i = 0; i < segments.length - 1; i++) {
+            value = resolveSimpleNameOnModel(value, segments[i]);
+            if (value instanceof Failure) {
+                return value;
             }
         }
-        return resolveSimpleNameOnModel(model, complexName);
+        return value;
+    }
+
+    /**
+     * @param target what {@link #resolveParent(Object, NamePath)} returned.
+     * @return the value of the last segment of path on target, or a {@link Failure}.
+     */
+    private Object resolveLast(Object target, NamePath path) {
+        return resolveSimpleNameOnModel(target, path.segments[path.segments.length - 1]);
     }
 
-    private Result resolveSimpleNameOnModel(Object target, String name) {
-        // If the name is empty, the value is the target itself.
-        if (name.isBlank()) {
-            return succeed(target);
+    /**
+     * When the last segment of path is a field or method of target that holds an integer type or a double,
+     * write its value to outputWriter without boxing it.
+     *
+     * Otherwise resolve it with {@link #resolveLast(Object, NamePath)}.
+     *
+     * @param target what {@link #resolveParent(Object, NamePath)} returned.
+     * @return {@link #WRITTEN}, the value of the last segment on target, or a {@link Failure}.
+     */
+    private Object writePrimitive(Object target, NamePath path, Writer outputWriter) throws IOException {
+        var segment = path.segments[path.segments.length - 1];
+        var accessor = segment.boundAccessor;
+        if (accessor == null || !accessor.accepts(target)) {
+            if (target == null || target instanceof Map || target instanceof Function) {
+                return resolveLast(target, path);
+            }
+            accessor = segment.accessorFor(target.getClass());
+        }
+        if (accessor.longGetter == null && accessor.doubleGetter == null) {
+            return resolveLast(target, path);
+        }
+        long longValue = 0;
+        double doubleValue = 0;
+        try {
+            if (accessor.longGetter != null) {
+                longValue = (long) accessor.longGetter.invokeExact(target);
+            } else {
+                doubleValue = (double) accessor.doubleGetter.invokeExact(target);
+            }
+        } catch (Throwable e) {
+            if (accessor.next == null) {
+                return failWith(accessor.strategy, "%s could not be read from %s: %s", segment.name, target, e);
+            }
+            return read(accessor.next, target, segment.name);
         }
+        succeedWith(accessor.strategy, null);
+        if (accessor.longGetter != null) {
+            ValueWriter.writeLong(longValue, outputWriter);
+        } else {
+            ValueWriter.writeDouble(doubleValue, outputWriter);
+        }
+        return WRITTEN;
+    }
+
+    private Object resolveSimpleNameOnModel(Object target, NamePath.Segment segment) {
+        var name = segment.name;
         // If we're trying to resolve a name on a null object, it will always fail.
         if (target == null) {
-            return fail("%s not found on null object.", name);
+            return failWith(null, "%s not found on null object.", name);
         }
-        // Find name in the keys of a map.
-        if (target instanceof Map) {
-            var map = (Map<String, Object>) target;
-            if (map.containsKey(name)) {
-                return succeed(map.get(name));
+        // A name that was bound to the type of the model when the template was created is read without looking further,
+        // unless the model isn't of that type after all.
+        var accessor = segment.boundAccessor;
+        if (accessor == null || !accessor.accepts(target)) {
+            // Find name in the keys of a map.
+            if (target instanceof Map) {
+                var map = (Map<String, Object>) target;
+                var value = map.get(name);
+                if (value != null || map.containsKey(name)) {
+                    return succeedWith(ResolutionStrategy.MAP, value);
+                }
+                return failWith(ResolutionStrategy.MAP, "%s not found in map %s.", name, target);
+            }
+            // Find value by applying the target function to the key.
+            if (target instanceof Function) {
+                return succeedWith(ResolutionStrategy.FUNCTION, ((Function<Object, Object>) target).apply(name));
+            }
+            // Find a field, getter, isser or plain method called name.
+            accessor = segment.accessorFor(target.getClass());
+            if (accessor == Accessor.NONE) {
+                return failWith(accessor.strategy, "%s not found on %s", name, target);
             }
-            return fail("%s not found in map %s.", name, target);
-        }
-        // Find value by applying the target function to the key.
-        if (target instanceof Function) {
-            return succeed(((Function<Object, Object>) target).apply(name));
         }
-        // Find the value of a field called name.
-        var fieldResult = getFieldValue(target, target.getClass(), name);
-        if (!fieldResult.failed) {
-            return fieldResult;
+        return read(accessor, target, name);
+    }
+
+    /**
+     * Read name from target with accessor.
+     * When that throws, the next strategy that can read name is tried, like when accessor's strategy had found nothing.
+     */
+    private Object read(Accessor accessor, Object target, String name) {
+        while (true) {
+            try {
+                return succeedWith(accessor.strategy, accessor.get(target));
+            } catch (Throwable e) {
+                if (accessor.next == null) {
+                    return failWith(accessor.strategy, "%s could not be read from %s: %s", name, target, e);
+                }
+                accessor = accessor.next;
+            }
         }
-        // Get the value from getName()
-        var getterResult = getMethodValue(target, target.getClass(), "get" + capitalize(name));
-        if (!getterResult.failed) {
-            return getterResult;
+    }
+
+    private Object succeedWith(ResolutionStrategy strategy, Object value) {
+        if (metrics != null) {
+            metrics.nameResolved(strategy);
         }
-        // Get the value from isName()
-        var isserResult = getMethodValue(target, target.getClass(), "is" + capitalize(name));
-        if (!isserResult.failed) {
-            return isserResult;
+        return value;
+    }
+
+    private Failure failWith(ResolutionStrategy strategy, String message, Object... params) {
+        if (metrics != null) {
+            metrics.nameNotResolved(strategy);
         }
-        // Get the value from name()
-        var plainMethodResult = getMethodValue(target, target.getClass(), name);
-        if (!plainMethodResult.failed) {
-            return plainMethodResult;
+        return new Failure(message, params);
+    }
+
+    /**
+     * @return the cached accessor for name on type. Looks it up when this is the first time it is asked for.
+     */
+    static Accessor findAccessor(Class<?> type, String name) {
+        return accessorsPerClass.get(type).computeIfAbsent(name, n -> lookUpAccessor(type, n));
+    }
+
+    /**
+     * @return the accessor of the first strategy that can read name, linked to those of the strategies after it.
+     */
+    private static Accessor lookUpAccessor(Class<?> type, String name) {
+        var accessors = new Accessor[]{
+                // Find the value of a field called name.
+                getFieldAccessor(type, name),
+                // Get the value from getName()
+                getMethodAccessor(type, "get" + capitalize(name), ResolutionStrategy.GETTER),
+                // Get the value from isName()
+                getMethodAccessor(type, "is" + capitalize(name), ResolutionStrategy.ISSER),
+                // Get the value from name()
+                getMethodAccessor(type, name, ResolutionStrategy.METHOD)
+        };
+        Accessor first = null;
+        for (int i = accessors.length - 1; i >= 0; i--) {
+            if (accessors[i] != null) {
+                accessors[i].next = first;
+                first = accessors[i];
+            }
         }
-        // Give up.
-        return fail("%s not found on %s", name, target);
+        // Give up when nothing was found.
+        return first == null ? Accessor.NONE : first;
     }
 
     private static String capitalize(String s) {
         return s.substring(0, 1).toUpperCase() + s.substring(1);
     }
 
-    static Result getFieldValue(Object target, Class<?> type, String fieldName) {
-        try {
-            var field = type.getDeclaredField(fieldName);
-            field.setAccessible(true);
-            return succeed(field.get(target));
-        } catch (NoSuchFieldException e) {
-            // go on
-        } catch (IllegalAccessException e) {
-            return fail("");
+    private static Accessor getFieldAccessor(Class<?> type, String fieldName) {
+        for (var t = type; t != null; t = t.getSuperclass()) {
+            for (Field field : t.getDeclaredFields()) {
+                if (field.getName().equals(fieldName)) {
+                    if (!makeAccessible(field)) {
+                        return null;
+                    }
+                    try {
+                        return Accessor.of(MethodHandles.lookup().unreflectGetter(field), Modifier.isStatic(field.getModifiers()), ResolutionStrategy.FIELD, field.getGenericType());
+                    } catch (IllegalAccessException e) {
+                        return null;
+                    }
+                }
+            }
         }
+        return null;
+    }
 
-        var superclass = type.getSuperclass();
-        if (superclass == null) {
-            return fail("");
+    private static Accessor getMethodAccessor(Class<?> type, String methodName, ResolutionStrategy strategy) {
+        for (var t = type; t != null; t = t.getSuperclass()) {
+            for (Method method : t.getDeclaredMethods()) {
+                if (method.getParameterCount() == 0 && !method.isBridge() && method.getName().equals(methodName)) {
+                    if (!makeAccessible(method)) {
+                        return null;
+                    }
+                    try {
+                        return Accessor.of(MethodHandles.lookup().unreflect(method), Modifier.isStatic(method.getModifiers()), strategy, method.getGenericReturnType());
+                    } catch (IllegalAccessException e) {
+                        return null;
+                    }
+                }
+            }
         }
-        return getFieldValue(target, superclass, fieldName);
+        return null;
     }
 
-    static Result getMethodValue(Object target, Class<?> type, String fieldName) {
+    private static boolean makeAccessible(AccessibleObject member) {
         try {
-            var method = type.getDeclaredMethod(fieldName);
-            method.setAccessible(true);
-            return succeed(method.invoke(target));
-        } catch (NoSuchMethodException | InvocationTargetException e) {
-            // go on
-        } catch (IllegalAccessException e) {
-            return fail("");
-        }
-
-        var superclass = type.getSuperclass();
-        if (superclass == null) {
-            return fail("");
+            member.setAccessible(true);
+            return true;
+        } catch (RuntimeException e) {
+            // Typically InaccessibleObjectException: the member is in a module that is not open to us.
+            return false;
         }
-        return getMethodValue(target, superclass, fieldName);
     }
 }
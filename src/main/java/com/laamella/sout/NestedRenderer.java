@@ -0,0 +1,153 @@
+package com.laamella.sout;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import static java.util.stream.Collectors.joining;
+
+final class NestedRenderer extends Renderer {
+    private static final BooleanRenderer booleanRenderer = new BooleanRenderer();
+
+    final String name;
+    final NamePath path;
+    private final NameResolver nameResolver;
+    private final CustomNameRenderer customNameRenderer;
+    private final CustomTypeRenderer customTypeRenderer;
+    final Renderable[] parts;
+    private final CollectionRenderer collectionRenderer;
+    private final FragmentCache fragmentCache;
+    /**
+     * Where to report how long rendering took, and how many elements a loop had. null when nobody is measuring.
+     */
+    final NodeMetrics metrics;
+    /**
+     * Whether the parts include partials, so cached fragments are only valid until a partial is set again.
+     */
+    private final boolean includesPartials;
+
+    NestedRenderer(NamePath path, LineStarts lineStarts, int offset, NameResolver nameResolver, CustomNameRenderer customNameRenderer, CustomTypeRenderer customTypeRenderer, CollectionRenderer collectionRenderer, FragmentCache fragmentCache, NodeMetrics metrics, Renderable[] parts) {
+        super(lineStarts, offset);
+        this.name = path.name;
+        this.path = path;
+        this.nameResolver = nameResolver;
+        this.customNameRenderer = customNameRenderer;
+        this.customTypeRenderer = customTypeRenderer;
+        this.parts = parts;
+        this.collectionRenderer = collectionRenderer;
+        this.fragmentCache = fragmentCache;
+        this.metrics = metrics;
+        boolean includes = false;
+        for (var part : parts) {
+            includes |= Partial.isIncludedBy(part);
+        }
+        this.includesPartials = includes;
+    }
+
+    @Override
+    public void render(Object model, Scope scope, Writer outputWriter) {
+        SlowNodeEvent event = null;
+        if (SlowNodeEvent.isRecorded()) {
+            event = new SlowNodeEvent();
+            event.begin();
+        }
+        long start = metrics == null ? 0 : System.nanoTime();
+        renderNesting(model, scope, outputWriter);
+        if (metrics != null) {
+            metrics.rendered(System.nanoTime() - start);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.name = name;
+            event.position = position().toString();
+            event.commit();
+        }
+    }
+
+    private void renderNesting(Object model, Scope scope, Writer outputWriter) {
+        try {
+            if (customNameRenderer != null && customNameRenderer.render(name, parts, model, scope, position(), outputWriter)) {
+                renderedByCustomRenderer(outputWriter);
+                return;
+            }
+
+            var nestedModel = nameResolver.resolve(model, path);
+            if (nestedModel instanceof NameResolver.Failure) {
+                throw new SoutException(position(), ((NameResolver.Failure) nestedModel).message());
+            }
+            if (outputWriter instanceof IncrementalWriter) {
+                var incrementalWriter = (IncrementalWriter) outputWriter;
+                if (incrementalWriter.reuseSection(this, model)) {
+                    return;
+                }
+                incrementalWriter.beginSection(this, model, path, nestedModel);
+                try {
+                    renderNestedModel(model, nestedModel, scope, outputWriter);
+                } finally {
+                    incrementalWriter.endSection();
+                }
+                return;
+            }
+            renderNestedModel(model, nestedModel, scope, outputWriter);
+        } catch (IOException e) {
+            throw new SoutException(position(), e);
+        }
+    }
+
+    private void renderNestedModel(Object model, Object nestedModel, Scope scope, Writer outputWriter) throws IOException {
+        // The parts of a boolean, and the lead-in and lead-out of a loop, render on the model around the nesting,
+        // so their output doesn't only depend on the nested value, and isn't cached.
+        // An IncrementalWriter has to see the names that are read inside, so that it notices when they change.
+        boolean cacheable = fragmentCache != null && !(outputWriter instanceof IncrementalWriter)
+                && !(nestedModel instanceof Boolean) && parts.length != 4;
+        var fragmentKey = !cacheable ? null : fragmentCache.keyFor(this, nestedModel, includesPartials ? Partial.generation() : 0);
+        if (fragmentKey == null) {
+            renderParts(model, nestedModel, scope, outputWriter);
+            return;
+        }
+        var fragment = fragmentCache.get(fragmentKey);
+        if (fragment == null) {
+            var fragmentWriter = new StringBuilderWriter(new StringBuilder());
+            renderParts(model, nestedModel, scope, fragmentWriter);
+            fragment = new char[fragmentWriter.stringBuilder.length()];
+            fragmentWriter.stringBuilder.getChars(0, fragment.length, fragment, 0);
+            fragmentCache.put(fragmentKey, fragment);
+        }
+        outputWriter.write(fragment);
+    }
+
+    private void renderParts(Object model, Object nestedModel, Scope scope, Writer outputWriter) throws IOException {
+        var nestedScope = scope.enter();
+        try {
+            if (customTypeRenderer != null && customTypeRenderer.render(name, parts, nestedModel, nestedScope, model, scope, position(), outputWriter)) {
+                renderedByCustomRenderer(outputWriter);
+                return;
+            }
+            if (booleanRenderer.render(this, parts, nestedModel, nestedScope, model, outputWriter)) {
+                return;
+            }
+            if (collectionRenderer.render(this, parts, nestedModel, nestedScope, model, scope, outputWriter)) {
+                return;
+            }
+            if (SimpleNestingRenderer.renderSinglePart(parts, nestedModel, nestedScope, outputWriter)) {
+                return;
+            }
+        } finally {
+            nestedScope.exit();
+        }
+        throw new SoutException(position(), "Don't know how to render %s.", name);
+    }
+
+    @Override
+    int nodeCount() {
+        int count = 1;
+        for (var part : parts) {
+            count += part instanceof Renderer ? ((Renderer) part).nodeCount() : 1;
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return '❰' + name + "❚" + Arrays.stream(parts).map(Object::toString).collect(joining("❚")) + '❱';
+    }
+}
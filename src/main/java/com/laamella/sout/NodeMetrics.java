@@ -0,0 +1,25 @@
+package com.laamella.sout;
+
+/**
+ * Reports the measurements of one node to the {@link RenderMetrics}, with the template and position it belongs to.
+ * Nodes only have one when the template was created with metrics.
+ */
+final class NodeMetrics {
+    private final RenderMetrics metrics;
+    private final SoutTemplate template;
+    private final Position position;
+
+    NodeMetrics(RenderMetrics metrics, SoutTemplate template, Position position) {
+        this.metrics = metrics;
+        this.template = template;
+        this.position = position;
+    }
+
+    void rendered(long nanos) {
+        metrics.nodeRendered(template, position, nanos);
+    }
+
+    void loopRendered(int iterations) {
+        metrics.loopRendered(template, position, iterations);
+    }
+}
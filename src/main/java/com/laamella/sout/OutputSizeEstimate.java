@@ -0,0 +1,34 @@
+package com.laamella.sout;
+
+/**
+ * Learns how big the output of a template usually is, so that buffers can be made big enough before rendering.
+ * It follows the 90th percentile of the sizes it is told about, moving a bit towards every new size:
+ * up by a larger step than down, so that it settles where nine out of ten renders fit.
+ * <p>
+ * It is updated without synchronization. Concurrent updates can get lost, which only makes it a little less accurate.
+ */
+final class OutputSizeEstimate {
+    private int estimate = 0;
+
+    /**
+     * @return the size that most renders fit in, or 0 when nothing is known yet.
+     */
+    int get() {
+        return estimate;
+    }
+
+    void record(int size) {
+        int current = estimate;
+        if (current == 0) {
+            estimate = size;
+            return;
+        }
+        // Steps are relative to the estimate, so it adapts as quickly to big outputs as to small ones.
+        int step = Math.max(16, current / 8);
+        if (size > current) {
+            estimate = current + Math.min(size - current, step * 9 / 10);
+        } else if (size < current) {
+            estimate = current - Math.min(current - size, Math.max(1, step / 10));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.laamella.sout;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for parsing a template.
+ * The parser only creates one when {@link #isRecorded()}, so parsing costs nothing extra while nobody records.
+ */
+@Name("com.laamella.sout.Parse")
+@Label("Parse Template")
+@Category("sout")
+@StackTrace(false)
+final class ParseEvent extends Event {
+    private static final EventType type = EventType.getEventType(ParseEvent.class);
+
+    @Label("Template Name")
+    String templateName;
+
+    @Label("Template Size")
+    @Description("The length of the template in characters.")
+    int size;
+
+    @Label("Node Count")
+    @Description("The amount of nodes in the template after parsing.")
+    int nodeCount;
+
+    /**
+     * @return whether a recording is currently interested in parses.
+     */
+    static boolean isRecorded() {
+        return type.isEnabled();
+    }
+}
@@ -0,0 +1,120 @@
+package com.laamella.sout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A template that other templates include with "{@name}".
+ * Including templates point at this holder, not at the partial's nodes,
+ * so replacing the partial takes effect in all of them at once, without parsing them again.
+ * They all share the nodes of the partial.
+ */
+final class Partial {
+    /**
+     * Held while checking for cycles and swapping, for all partials at once:
+     * two partials that are set at the same time could otherwise each pass the check and then include each other.
+     * It is shared by all configurations and registries, since their templates can include each other's partials.
+     */
+    private static final Object swapLock = new Object();
+    /**
+     * Counts the swaps of all partials, so stored output that includes partials can tell that it is out of date.
+     */
+    private static volatile long generation = 0;
+
+    final String name;
+    private volatile Renderer root = null;
+
+    Partial(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return whether the partial has been set.
+     */
+    boolean isSet() {
+        return root != null;
+    }
+
+    /**
+     * @return the root node of the partial.
+     * @throws SoutException when it hasn't been set.
+     */
+    Renderer root() {
+        var current = root;
+        if (current == null) {
+            throw new SoutException("Partial %s is not available.", name);
+        }
+        return current;
+    }
+
+    /**
+     * Replace the partial.
+     *
+     * @throws SoutException when newRoot includes this partial, directly or through other partials.
+     */
+    void set(Renderer newRoot) {
+        synchronized (swapLock) {
+            var path = new ArrayList<String>();
+            path.add(name);
+            checkForCycles(newRoot, path);
+            root = newRoot;
+            // Counted after the swap, so output rendered with the old root is never stored under the new generation.
+            generation++;
+        }
+    }
+
+    /**
+     * @return a number that changes whenever any partial is set.
+     */
+    static long generation() {
+        return generation;
+    }
+
+    /**
+     * @return whether node includes a partial somewhere.
+     */
+    static boolean isIncludedBy(Renderable node) {
+        if (node instanceof IncludeRenderer) {
+            return true;
+        } else if (node instanceof ContainerRenderer) {
+            for (var child : ((ContainerRenderer) node).children) {
+                if (isIncludedBy(child)) {
+                    return true;
+                }
+            }
+        } else if (node instanceof NestedRenderer) {
+            for (var part : ((NestedRenderer) node).parts) {
+                if (isIncludedBy(part)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param path the names of the partials that lead to node, starting with this one.
+     */
+    private void checkForCycles(Renderable node, List<String> path) {
+        if (node instanceof ContainerRenderer) {
+            for (var child : ((ContainerRenderer) node).children) {
+                checkForCycles(child, path);
+            }
+        } else if (node instanceof NestedRenderer) {
+            for (var part : ((NestedRenderer) node).parts) {
+                checkForCycles(part, path);
+            }
+        } else if (node instanceof IncludeRenderer) {
+            var included = ((IncludeRenderer) node).partial;
+            path.add(included.name);
+            if (included == this) {
+                throw new SoutException("Include cycle: %s.", String.join(" → ", path));
+            }
+            var includedRoot = included.root;
+            if (includedRoot != null) {
+                checkForCycles(includedRoot, path);
+            }
+            path.remove(path.size() - 1);
+        }
+    }
+}
@@ -11,6 +11,20 @@ public class Position {
         this.row = row;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Position)) {
+            return false;
+        }
+        var other = (Position) o;
+        return column == other.column && row == other.row;
+    }
+
+    @Override
+    public int hashCode() {
+        return row * 31 + column;
+    }
+
     @Override
     public String toString() {
         return String.format("%d:%d", row, column);
@@ -0,0 +1,47 @@
+package com.laamella.sout;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for rendering a whole template.
+ * Created only when {@link #isRecorded()}, so a render doesn't depend on escape analysis to avoid allocating it.
+ */
+@Name("com.laamella.sout.Render")
+@Label("Render Template")
+@Category("sout")
+@StackTrace(false)
+final class RenderEvent extends Event {
+    private static final EventType type = EventType.getEventType(RenderEvent.class);
+
+    @Label("Template Name")
+    String templateName;
+
+    @Label("Output Size")
+    @Description("Characters written when rendering to a Writer, bytes when rendering to a stream or buffer.")
+    long outputSize;
+
+    /**
+     * @return whether a recording is currently interested in renders.
+     */
+    static boolean isRecorded() {
+        return type.isEnabled();
+    }
+
+    /**
+     * @return a begun event when renders are recorded, otherwise null.
+     */
+    static RenderEvent beginIfRecorded() {
+        if (!isRecorded()) {
+            return null;
+        }
+        var event = new RenderEvent();
+        event.begin();
+        return event;
+    }
+}
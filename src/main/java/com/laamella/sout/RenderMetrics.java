@@ -0,0 +1,56 @@
+package com.laamella.sout;
+
+/**
+ * Receives measurements while templates render. Set one with {@link SoutConfiguration#setRenderMetrics(RenderMetrics)}.
+ * {@link StripedRenderMetrics} is a ready-made implementation.
+ * <p>
+ * Methods are called from the rendering threads, in the middle of rendering, so they should be quick and thread-safe.
+ */
+public interface RenderMetrics {
+    /**
+     * The ways a name can be resolved on a model, in the order they are tried. See README.md.
+     */
+    enum ResolutionStrategy {MAP, FUNCTION, FIELD, GETTER, ISSER, METHOD}
+
+    /**
+     * A template was rendered without problems.
+     *
+     * @param template   the template that was rendered.
+     * @param nanos      how long rendering took.
+     * @param outputSize how much was written: characters when rendering to a Writer, bytes when rendering to a stream or buffer.
+     */
+    void templateRendered(SoutTemplate template, long nanos, long outputSize);
+
+    /**
+     * A name or a nesting was rendered.
+     *
+     * @param template the template the node is in. For a node in an included template, that is the included template.
+     * @param position where the node is in the template.
+     * @param nanos    how long rendering took, including the nodes inside it.
+     */
+    void nodeRendered(SoutTemplate template, Position position, long nanos);
+
+    /**
+     * A loop was rendered.
+     *
+     * @param template   the template the loop is in. For a loop in an included template, that is the included template.
+     * @param position   where the loop is in the template.
+     * @param iterations how many elements were rendered.
+     */
+    void loopRendered(SoutTemplate template, Position position, int iterations);
+
+    /**
+     * A part of a name was resolved on a model.
+     * FIELD is tried first for objects, so resolving with GETTER, ISSER or METHOD means FIELD fell back to them.
+     */
+    void nameResolved(ResolutionStrategy strategy);
+
+    /**
+     * A part of a name could not be resolved on a model.
+     *
+     * @param strategy the last strategy that was tried: MAP for a missing key,
+     *                 METHOD when an object has nothing by that name, or the strategy that threw an exception.
+     *                 null when the model was null.
+     */
+    void nameNotResolved(ResolutionStrategy strategy);
+}
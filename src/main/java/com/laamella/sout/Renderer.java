@@ -1,11 +1,6 @@
 package com.laamella.sout;
 
-import java.io.IOException;
 import java.io.Writer;
-import java.util.Arrays;
-import java.util.List;
-
-import static java.util.stream.Collectors.joining;
 
 /**
  * The base of the Abstract Syntax Tree for the template.
@@ -13,157 +8,57 @@ import static java.util.stream.Collectors.joining;
  * Its main purpose is to render the template.
  */
 abstract class Renderer implements Renderable {
-    final Position position;
-
-    Renderer(Position position) {
-        this.position = position;
-    }
-
-    public abstract void render(Object model, Scope scope, Writer outputWriter);
-}
+    final LineStarts lineStarts;
+    final int offset;
 
-class NameRenderer extends Renderer {
-    private final String name;
-    private final NameResolver nameResolver;
-    private final CustomNameRenderer customNameRenderer;
-    private final CustomTypeRenderer customTypeRenderer;
-
-    NameRenderer(String name, Position position, NameResolver nameResolver, CustomNameRenderer customNameRenderer, CustomTypeRenderer customTypeRenderer) {
-        super(position);
-        this.name = name;
-        this.customNameRenderer = customNameRenderer;
-        this.nameResolver = nameResolver;
-        this.customTypeRenderer = customTypeRenderer;
+    Renderer(LineStarts lineStarts, int offset) {
+        this.lineStarts = lineStarts;
+        this.offset = offset;
     }
 
-    @Override
-    public void render(Object model, Scope scope, Writer outputWriter) {
-        try {
-            if (customNameRenderer.render(name, null, model, scope, position, outputWriter)) {
-                return;
-            }
-            NameResolver.Result subModelResult = nameResolver.resolveComplexNameOnModel(model, name);
-            if (subModelResult.failed) {
-                throw new SoutException(position, subModelResult.message);
-            }
-            var subModel = subModelResult.value;
-            if (customTypeRenderer.render(name, null, subModel, scope, null, null, position, outputWriter)) {
-                return;
-            }
-            if (subModel == null) {
-                throw new SoutException(position, "Null value.");
-            }
-            outputWriter.append(subModel.toString());
-        } catch (IOException e) {
-            throw new SoutException(position, e);
-        }
+    /**
+     * @return where this node is in the template. It is calculated on every call.
+     */
+    Position position() {
+        return lineStarts.positionOf(offset);
     }
 
-    @Override
-    public String toString() {
-        return "❰" + name + "❱";
-    }
-}
-
-class ContainerRenderer extends Renderer {
-    private final List<Renderer> children;
-
-    ContainerRenderer(Position position, List<Renderer> children) {
-        super(position);
-        this.children = children;
-    }
-
-    @Override
-    public void render(Object model, Scope scope, Writer outputWriter) {
-        for (var child : children) {
-            child.render(model, scope, outputWriter);
-        }
-    }
-
-    @Override
-    public String toString() {
-        return children.stream().map(Object::toString).collect(joining());
-    }
-}
-
-class NestedRenderer extends Renderer {
-    private final String name;
-    private final NameResolver nameResolver;
-    private final CustomNameRenderer customNameRenderer;
-    private final CustomTypeRenderer customTypeRenderer;
-    private final Renderable[] parts;
-    private final BooleanRenderer booleanRenderer = new BooleanRenderer();
-    private final CollectionRenderer collectionRenderer;
-    private final SimpleNestingRenderer simpleNestingRenderer = new SimpleNestingRenderer();
+    public abstract void render(Object model, Scope scope, Writer outputWriter);
 
-    NestedRenderer(String name, Position position, NameResolver nameResolver, CustomNameRenderer customNameRenderer, CustomTypeRenderer customTypeRenderer, IteratorFactory iteratorFactory, Renderable[] parts) {
-        super(position);
-        this.name = name;
-        this.nameResolver = nameResolver;
-        this.customNameRenderer = customNameRenderer;
-        this.customTypeRenderer = customTypeRenderer;
-        this.parts = parts;
-        this.collectionRenderer = new CollectionRenderer(iteratorFactory);
+    /**
+     * @return the amount of renderers in the tree that starts here.
+     */
+    int nodeCount() {
+        return 1;
     }
 
-    @Override
-    public void render(Object model, Scope scope, Writer outputWriter) {
-        try {
-            if (customNameRenderer.render(name, parts, model, scope, position, outputWriter)) {
-                return;
-            }
-
-            var nestedModelResult = nameResolver.resolveComplexNameOnModel(model, name);
-            if (nestedModelResult.failed) {
-                throw new SoutException(position, nestedModelResult.message);
-            }
-            var nestedModel = nestedModelResult.value;
-            var nestedScope = new Scope(scope);
-
-            if (customTypeRenderer.render(name, parts, nestedModel, nestedScope, model, scope, position, outputWriter)) {
-                return;
-            }
-            if (booleanRenderer.render(name, parts, nestedModel, nestedScope, model, scope, position, outputWriter)) {
-                return;
-            }
-            if (collectionRenderer.render(name, parts, nestedModel, nestedScope, model, scope, position, outputWriter)) {
-                return;
-            }
-            if (simpleNestingRenderer.render(name, parts, nestedModel, nestedScope, model, scope, position, outputWriter)) {
-                return;
-            }
-            throw new SoutException(position, "Don't know how to render %s.", name);
-        } catch (IOException e) {
-            throw new SoutException(position, e);
+    /**
+     * Tell an {@link IncrementalWriter} that a custom renderer wrote something, since what it used can't be recorded.
+     */
+    static void renderedByCustomRenderer(Writer outputWriter) {
+        if (outputWriter instanceof IncrementalWriter) {
+            ((IncrementalWriter) outputWriter).untracked();
         }
     }
 
-    @Override
-    public String toString() {
-        return '❰' + name + "❚" + Arrays.stream(parts).map(Object::toString).collect(joining("❚")) + '❱';
+    /**
+     * Render with an int as the model. Renderers that can use the int directly override this, so it doesn't get boxed.
+     */
+    void renderInt(int model, Scope scope, Writer outputWriter) {
+        render(model, scope, outputWriter);
     }
-}
 
-class TextRenderer extends Renderer {
-    final String text;
-
-    TextRenderer(String text, Position position) {
-        super(position);
-        this.text = text;
+    /**
+     * Render with a long as the model. See {@link #renderInt(int, Scope, Writer)}.
+     */
+    void renderLong(long model, Scope scope, Writer outputWriter) {
+        render(model, scope, outputWriter);
     }
 
-    @Override
-    public void render(Object model, Scope scope, Writer outputWriter) {
-        try {
-            outputWriter.append(text);
-        } catch (IOException e) {
-            throw new SoutException(position, e);
-        }
-    }
-
-    @Override
-    public String toString() {
-        return text;
+    /**
+     * Render with a double as the model. See {@link #renderInt(int, Scope, Writer)}.
+     */
+    void renderDouble(double model, Scope scope, Writer outputWriter) {
+        render(model, scope, outputWriter);
     }
 }
-
@@ -1,7 +1,6 @@
 package com.laamella.sout;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import static java.util.Objects.requireNonNull;
 
@@ -9,8 +8,23 @@ import static java.util.Objects.requireNonNull;
  * A scope that holds user-defined variables.
  */
 public class Scope {
+    /**
+     * The global scope of every thread, reused by the renders on that thread.
+     */
+    private static final ThreadLocal<Scope> globalScopes = ThreadLocal.withInitial(() -> new Scope(null));
+
     private final Scope parentScope;
-    private final Map<String, Object> variables = new HashMap<>();
+    /**
+     * The variables in this scope, in two parallel arrays that are only created when the first variable is set.
+     */
+    private String[] names = null;
+    private Object[] values = null;
+    private int size = 0;
+    /**
+     * The scope that was used for the last nesting inside this scope. It is reused for the next nesting.
+     */
+    private Scope nestedScope = null;
+    private boolean inUse = false;
 
     Scope(Scope parentScope) {
         this.parentScope = parentScope;
@@ -22,26 +36,15 @@ public class Scope {
      */
     @SuppressWarnings("unchecked")
     public <T> T getVariable(String name, T def) {
-        var nameScope = findScopeContainingName(requireNonNull(name));
-        if (nameScope == null) {
-            variables.put(name, def);
-            return def;
+        requireNonNull(name);
+        for (var scope = this; scope != null; scope = scope.parentScope) {
+            int index = scope.indexOf(name);
+            if (index >= 0) {
+                return (T) scope.values[index];
+            }
         }
-        return (T) nameScope.variables.get(name);
-    }
-
-    /**
-     * @return the scope where name is defined.
-     * If it hasn't been defined anywhere, null is returned.
-     */
-    private Scope findScopeContainingName(String name) {
-        if (variables.containsKey(requireNonNull(name))) {
-            return this;
-        }
-        if (parentScope == null) {
-            return null;
-        }
-        return parentScope.findScopeContainingName(name);
+        put(name, def);
+        return def;
     }
 
     /**
@@ -50,19 +53,22 @@ public class Scope {
      * @throws SoutException if name isn't defined in any scope.
      */
     public <T> T updateVariable(String name, T newValue) {
-        var scope = findScopeContainingName(requireNonNull(name));
-        if (scope == null) {
-            throw new SoutException("Variable %s not found.", name);
+        requireNonNull(name);
+        for (var scope = this; scope != null; scope = scope.parentScope) {
+            int index = scope.indexOf(name);
+            if (index >= 0) {
+                scope.values[index] = newValue;
+                return newValue;
+            }
         }
-        scope.variables.put(name, newValue);
-        return newValue;
+        throw new SoutException("Variable %s not found.", name);
     }
 
     /**
      * Set a variable to a value in this scope.
      */
     public void setVariable(String name, Object value) {
-        variables.put(requireNonNull(name), value);
+        put(requireNonNull(name), value);
     }
 
     /**
@@ -76,9 +82,92 @@ public class Scope {
      * @return the global scope, where global variables can be stored.
      */
     public Scope getGlobalScope() {
-        if (parentScope == null) {
-            return this;
+        var scope = this;
+        while (scope.parentScope != null) {
+            scope = scope.parentScope;
+        }
+        return scope;
+    }
+
+    /**
+     * @return an empty global scope for a render. Call {@link #exit()} on it when the render is done, so it can be reused.
+     */
+    static Scope enterGlobal() {
+        var scope = globalScopes.get();
+        if (scope.inUse) {
+            // A render inside a render, like from a custom renderer.
+            scope = new Scope(null);
+        }
+        scope.inUse = true;
+        return scope;
+    }
+
+    /**
+     * @return an empty scope inside this one. Call {@link #exit()} on it when it is no longer needed, so it can be reused.
+     */
+    Scope enter() {
+        var scope = nestedScope;
+        if (scope == null) {
+            scope = nestedScope = new Scope(this);
+        } else if (scope.inUse) {
+            // Something is rendering in this scope while its nested scope is still busy. Don't disturb it.
+            scope = new Scope(this);
+        }
+        scope.inUse = true;
+        return scope;
+    }
+
+    /**
+     * @return a copy of this scope and the scopes above it, with the same variables.
+     * Changes to the copy don't reach this scope, so the copy can be used on another thread.
+     */
+    Scope copy() {
+        var copy = new Scope(parentScope == null ? null : parentScope.copy());
+        if (size > 0) {
+            copy.names = Arrays.copyOf(names, size);
+            copy.values = Arrays.copyOf(values, size);
+            copy.size = size;
+        }
+        return copy;
+    }
+
+    /**
+     * Forget the variables in this scope, and let it be reused by {@link #enter()}.
+     */
+    void exit() {
+        if (size > 0) {
+            Arrays.fill(values, 0, size, null);
+            Arrays.fill(names, 0, size, null);
+            size = 0;
+        }
+        inUse = false;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < size; i++) {
+            var n = names[i];
+            if (n == name || n.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void put(String name, Object value) {
+        int index = indexOf(name);
+        if (index >= 0) {
+            values[index] = value;
+            return;
+        }
+        if (names == null) {
+            names = new String[4];
+            values = new Object[4];
+        } else if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
         }
-        return parentScope.getGlobalScope();
+        names[size] = name;
+        values[size] = value;
+        size++;
     }
 }
@@ -0,0 +1,243 @@
+package com.laamella.sout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The binary form of a parsed template, for storing it and loading it again without parsing.
+ * See {@link SoutTemplate#writeTo(OutputStream)} and {@link SoutTemplate#SoutTemplate(ByteBuffer, SoutConfiguration)}.
+ * <p>
+ * The format, in big-endian:
+ * <pre>
+ * int    magic "SOUT"
+ * int    format version
+ * char*4 open, separator, close, and escape character
+ * long   CRC32C of the source text, as UTF-16 characters in big-endian
+ * string name of the template
+ * int    amount of line starts, followed by the line starts
+ * node   the root node
+ * long   checksum of everything above
+ * </pre>
+ * A string is its length in UTF-8 bytes, or -1 for null, followed by the bytes.
+ * A node is a tag byte and an offset in the source, followed by
+ * a string for text, a name for names, a name and its parts for nestings, the name of the partial for includes,
+ * or its children for containers.
+ * <p>
+ * Only the text, names and structure are stored.
+ * Custom renderers, formats, caches and partials are attached from the configuration when the template is loaded, as when parsing.
+ */
+final class SerializedTemplate {
+    private static final int MAGIC = 0x534F5554;
+    /**
+     * Increase this when the format changes, so that files in an older format are refused.
+     */
+    private static final int VERSION = 2;
+    /**
+     * The amount of characters of the source that are checksummed at a time.
+     */
+    private static final int CHECKSUM_CHUNK_SIZE = 4096;
+
+    private static final byte TEXT = 0;
+    private static final byte NAME = 1;
+    private static final byte NESTING = 2;
+    private static final byte CONTAINER = 3;
+    private static final byte INCLUDE = 4;
+
+    final String name;
+    final long sourceChecksum;
+    final Renderer root;
+
+    /**
+     * Read a serialized template, creating its nodes with parser.
+     *
+     * @throws SoutException when serialized isn't a serialized template in this version, is damaged,
+     *                       or was written with other delimiters than parser uses.
+     */
+    SerializedTemplate(ByteBuffer serialized, SoutTemplateParser parser) {
+        var input = serialized.slice();
+        try {
+            checkIntegrity(input);
+            if (input.getInt() != MAGIC) {
+                throw new SoutException("This is not a serialized template.");
+            }
+            int version = input.getInt();
+            if (version != VERSION) {
+                throw new SoutException("Serialized template has version %d, but only version %d can be read.", version, VERSION);
+            }
+            if (!parser.hasDelimiters(input.getChar(), input.getChar(), input.getChar(), input.getChar())) {
+                throw new SoutException("Serialized template was written with other delimiters than the configuration has.");
+            }
+            sourceChecksum = input.getLong();
+            name = readString(input);
+            var lineStarts = new int[input.getInt()];
+            input.asIntBuffer().get(lineStarts);
+            input.position(input.position() + lineStarts.length * Integer.BYTES);
+            root = readNode(input, parser, new LineStarts(lineStarts));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new SoutException("Serialized template is incomplete.");
+        }
+    }
+
+    /**
+     * Write template in the binary form.
+     */
+    static void write(SoutTemplate template, OutputStream output) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var data = new DataOutputStream(bytes);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeChar(template.openChar);
+        data.writeChar(template.separatorChar);
+        data.writeChar(template.closeChar);
+        data.writeChar(template.escapeChar);
+        data.writeLong(template.sourceChecksum);
+        writeString(data, template.name);
+        var lineStarts = template.rootRenderer.lineStarts.toArray();
+        data.writeInt(lineStarts.length);
+        for (int lineStart : lineStarts) {
+            data.writeInt(lineStart);
+        }
+        writeNode(data, template.rootRenderer);
+        var checksum = new CRC32C();
+        checksum.update(bytes.toByteArray());
+        data.writeLong(checksum.getValue());
+        bytes.writeTo(output);
+    }
+
+    /**
+     * @return the checksum that is stored for the source of a template.
+     * The characters are checksummed in chunks as they are, so the source isn't copied or encoded as a whole.
+     */
+    static long checksumOf(CharSequence source) {
+        var checksum = new CRC32C();
+        var chars = new char[CHECKSUM_CHUNK_SIZE];
+        var bytes = ByteBuffer.allocate(CHECKSUM_CHUNK_SIZE * Character.BYTES);
+        var charsInBytes = bytes.asCharBuffer();
+        int length = source.length();
+        for (int start = 0; start < length; start += CHECKSUM_CHUNK_SIZE) {
+            int end = Math.min(length, start + CHECKSUM_CHUNK_SIZE);
+            if (source instanceof String) {
+                ((String) source).getChars(start, end, chars, 0);
+            } else {
+                for (int i = start; i < end; i++) {
+                    chars[i - start] = source.charAt(i);
+                }
+            }
+            charsInBytes.clear();
+            charsInBytes.put(chars, 0, end - start);
+            bytes.clear().limit((end - start) * Character.BYTES);
+            checksum.update(bytes);
+        }
+        return checksum.getValue();
+    }
+
+    private static void checkIntegrity(ByteBuffer input) {
+        if (input.remaining() < Long.BYTES) {
+            throw new SoutException("Serialized template is incomplete.");
+        }
+        var contents = input.duplicate().limit(input.limit() - Long.BYTES);
+        var checksum = new CRC32C();
+        checksum.update(contents);
+        if (checksum.getValue() != input.getLong(input.limit() - Long.BYTES)) {
+            throw new SoutException("Serialized template is damaged.");
+        }
+    }
+
+    private static void writeNode(DataOutputStream data, Renderer node) throws IOException {
+        if (node instanceof TextRenderer) {
+            data.writeByte(TEXT);
+            data.writeInt(node.offset);
+            writeString(data, ((TextRenderer) node).text);
+        } else if (node instanceof NameRenderer) {
+            data.writeByte(NAME);
+            data.writeInt(node.offset);
+            writeString(data, ((NameRenderer) node).name);
+        } else if (node instanceof NestedRenderer) {
+            var nesting = (NestedRenderer) node;
+            data.writeByte(NESTING);
+            data.writeInt(node.offset);
+            writeString(data, nesting.name);
+            data.writeInt(nesting.parts.length);
+            for (var part : nesting.parts) {
+                writeNode(data, (Renderer) part);
+            }
+        } else if (node instanceof ContainerRenderer) {
+            var children = ((ContainerRenderer) node).children;
+            data.writeByte(CONTAINER);
+            data.writeInt(node.offset);
+            data.writeInt(children.length);
+            for (var child : children) {
+                writeNode(data, child);
+            }
+        } else if (node instanceof IncludeRenderer) {
+            data.writeByte(INCLUDE);
+            data.writeInt(node.offset);
+            writeString(data, ((IncludeRenderer) node).partial.name);
+        } else {
+            throw new SoutException("Can't serialize %s.", node.getClass().getSimpleName());
+        }
+    }
+
+    private static Renderer readNode(ByteBuffer input, SoutTemplateParser parser, LineStarts lineStarts) {
+        byte tag = input.get();
+        int offset = input.getInt();
+        switch (tag) {
+            case TEXT -> {
+                // The text is stored as UTF-8, which is also what the node needs for rendering to streams.
+                var utf8Text = new byte[input.getInt()];
+                input.get(utf8Text);
+                return new TextRenderer(new String(utf8Text, UTF_8), utf8Text, lineStarts, offset);
+            }
+            case NAME -> {
+                return parser.newNameRenderer(readString(input), lineStarts, offset);
+            }
+            case NESTING -> {
+                var name = readString(input);
+                var parts = new Renderable[input.getInt()];
+                for (int i = 0; i < parts.length; i++) {
+                    parts[i] = readNode(input, parser, lineStarts);
+                }
+                return parser.newNestedRenderer(name, lineStarts, offset, parts);
+            }
+            case CONTAINER -> {
+                var children = new Renderer[input.getInt()];
+                for (int i = 0; i < children.length; i++) {
+                    children[i] = readNode(input, parser, lineStarts);
+                }
+                return new ContainerRenderer(lineStarts, offset, List.of(children));
+            }
+            case INCLUDE -> {
+                return parser.newIncludeRenderer(readString(input), lineStarts, offset, lineStarts.positionOf(offset));
+            }
+            default -> throw new SoutException("Serialized template contains an unknown node type %d.", tag);
+        }
+    }
+
+    private static void writeString(DataOutputStream data, String string) throws IOException {
+        if (string == null) {
+            data.writeInt(-1);
+            return;
+        }
+        var bytes = string.getBytes(UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(ByteBuffer input) {
+        int length = input.getInt();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        input.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
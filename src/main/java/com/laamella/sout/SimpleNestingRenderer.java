@@ -8,6 +8,10 @@ import java.io.Writer;
 public class SimpleNestingRenderer implements CustomTypeRenderer {
     @Override
     public boolean render(String name, Renderable[] parts, Object model, Scope scope, Object parentModel, Scope parentScope, Position position, Writer outputWriter) {
+        return renderSinglePart(parts, model, scope, outputWriter);
+    }
+
+    static boolean renderSinglePart(Renderable[] parts, Object model, Scope scope, Writer outputWriter) {
         if (parts.length == 1) {
             parts[0].render(model, scope, outputWriter);
             return true;
@@ -0,0 +1,38 @@
+package com.laamella.sout;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder event for a single name or nesting.
+ * Renderers ask {@link #isRecorded()} before creating one; it is off by default, since there are so many nodes.
+ */
+@Name("com.laamella.sout.SlowNode")
+@Label("Slow Template Node")
+@Description("A name or nesting in a template that took longer than the threshold to render, including everything inside it.")
+@Category("sout")
+@Enabled(false)
+@Threshold("10 ms")
+final class SlowNodeEvent extends Event {
+    private static final EventType type = EventType.getEventType(SlowNodeEvent.class);
+
+    @Label("Name")
+    String name;
+
+    @Label("Position")
+    @Description("Row and column in the template.")
+    String position;
+
+    /**
+     * @return whether a recording is currently interested in this event.
+     */
+    static boolean isRecorded() {
+        return type.isEnabled();
+    }
+}
@@ -0,0 +1,394 @@
+package com.laamella.sout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Turns a template into the Java source of a {@link CompiledTemplate}.
+ * Literal text becomes strings in a constant array, and nestings become methods that check for booleans and collections
+ * the same way {@link SoutTemplate} does, with their parts written out as code.
+ * <p>
+ * Only the delimiters are taken from the configuration:
+ * compiled templates don't use custom renderers, formats, metrics, caches, or parallel loops.
+ * Includes are compiled in as the partials are at the time of compiling,
+ * so setting a partial again doesn't change the compiled templates that include it.
+ */
+public class SoutCompiler {
+    /**
+     * Long nestings are split over multiple methods, so that they stay far below the size limit for methods.
+     */
+    private static final int MAX_NODES_PER_METHOD = 200;
+    /**
+     * The texts and names are packed into string literals of at most this length, so that they stay below the size limit for constants.
+     */
+    private static final int MAX_CONSTANT_LENGTH = 10_000;
+
+    private final SoutConfiguration configuration;
+    private final Function<String, CharSequence> partialSources;
+
+    /**
+     * A compiler that only finds the partials that are set on configuration.
+     */
+    public SoutCompiler(SoutConfiguration configuration) {
+        this(configuration, name -> null);
+    }
+
+    /**
+     * @param partialSources finds the text of the partial for an include, like "{@mail/header.sout}", by its name,
+     *                       or returns null when there is none. Partials that are set on configuration come first.
+     */
+    public SoutCompiler(SoutConfiguration configuration, Function<String, CharSequence> partialSources) {
+        this.configuration = requireNonNull(configuration);
+        this.partialSources = requireNonNull(partialSources);
+    }
+
+    /**
+     * @param template    the text of the template.
+     * @param packageName the package of the generated class, or "" for the default package.
+     * @param className   the simple name of the generated class.
+     * @return the Java source of the class.
+     * @throws SoutException when the template or a partial it includes can't be parsed, or includes itself.
+     */
+    public String compile(CharSequence template, String packageName, String className) {
+        requireNonNull(template);
+        var root = new PartialLoader().parser.parseTemplate(template);
+        return generate(root, requireNonNull(packageName), requireNonNull(className));
+    }
+
+    /**
+     * @return the Java source of a class that renders the template that starts at root.
+     */
+    static String generate(Renderer root, String packageName, String className) {
+        return new Generator(false).generate(root, packageName, className);
+    }
+
+    /**
+     * Finds the partials for the includes in one template, parsing the ones from partialSources once.
+     */
+    private final class PartialLoader implements Function<String, Partial> {
+        private final Map<String, Partial> partials = new HashMap<>();
+        /**
+         * The names of the partials that are being parsed, in order, to find partials that include themselves.
+         */
+        private final LinkedHashSet<String> loading = new LinkedHashSet<>();
+        final SoutTemplateParser parser = new SoutTemplateParser(
+                configuration.openChar, configuration.separatorChar, configuration.closeChar, configuration.escapeChar,
+                new CollectionRenderer(new IteratorFactory(null), 0, null),
+                null, null, Map.of(), Map.of(), this, null, null);
+
+        @Override
+        public Partial apply(String name) {
+            var configured = configuration.findPartial(name);
+            if (configured != null) {
+                return configured;
+            }
+            var partial = partials.get(name);
+            if (partial != null) {
+                return partial;
+            }
+            if (!loading.add(name)) {
+                throw new SoutException("Include cycle: %s → %s.", String.join(" → ", loading), name);
+            }
+            try {
+                var source = partialSources.apply(name);
+                if (source == null) {
+                    return null;
+                }
+                partial = new Partial(name);
+                partial.set(parser.parseTemplate(source, name));
+            } finally {
+                loading.remove(name);
+            }
+            partials.put(name, partial);
+            return partial;
+        }
+    }
+
+    /**
+     * Writes the Java source for a template.
+     * The texts and names go in two arrays that are unpacked from a few string literals when the class loads,
+     * instead of a constant each, so that a big template doesn't exceed the limits on the constant pool
+     * and on the size of the static initializer.
+     * <p>
+     * For the compiled tier, the names are passed to the hidden class as its class data instead,
+     * so that they keep the paths of the tree, with the fields and methods they were bound to.
+     */
+    static final class Generator {
+        private final boolean namesFromClassData;
+        private final StringBuilder packedTexts = new StringBuilder();
+        private final StringBuilder packedNames = new StringBuilder();
+        private final List<CompiledTemplate.Name> names = new ArrayList<>();
+        private final StringBuilder methods = new StringBuilder();
+        private int textCount = 0;
+        private int methodCount = 0;
+
+        /**
+         * @param namesFromClassData whether the generated class gets its names from {@link #names()} as class data,
+         *                           which only works for a hidden class in this package.
+         */
+        Generator(boolean namesFromClassData) {
+            this.namesFromClassData = namesFromClassData;
+        }
+
+        /**
+         * @return the names the generated code uses, in the order of its NAMES array.
+         */
+        CompiledTemplate.Name[] names() {
+            return names.toArray(new CompiledTemplate.Name[0]);
+        }
+
+        String generate(Renderer root, String packageName, String className) {
+            var body = new StringBuilder();
+            emitNodes(nodesOf(root), "model", body);
+            var source = new StringBuilder();
+            source.append("// Generated by sout. Do not edit.\n");
+            if (!packageName.isEmpty()) {
+                source.append("package ").append(packageName).append(";\n\n");
+            }
+            source.append("import com.laamella.sout.CompiledTemplate;\n\n");
+            source.append("import java.io.IOException;\n");
+            source.append("import java.io.Writer;\n");
+            if (namesFromClassData) {
+                source.append("import java.lang.invoke.MethodHandles;\n");
+            }
+            source.append("import java.util.Iterator;\n");
+            source.append("import java.util.List;\n\n");
+            source.append("public final class ").append(className).append(" extends CompiledTemplate {\n");
+            source.append(packedArray("String", "TEXTS", "unpack", packedTexts));
+            source.append("    private static final byte[][] UTF8_TEXTS = encode(TEXTS);\n");
+            if (namesFromClassData) {
+                source.append("    private static final Name[] NAMES = classData(MethodHandles.lookup());\n");
+            } else {
+                source.append(packedArray("Name", "NAMES", "names", packedNames));
+            }
+            source.append("\n    @Override\n");
+            source.append("    protected void renderModel(Object model, Writer outputWriter) throws IOException {\n");
+            source.append(indent(body));
+            source.append("    }\n");
+            source.append(methods);
+            source.append("}\n");
+            return source.toString();
+        }
+
+        private static List<Renderer> nodesOf(Renderer renderer) {
+            if (renderer instanceof ContainerRenderer) {
+                return Arrays.asList(((ContainerRenderer) renderer).children);
+            }
+            return List.of(renderer);
+        }
+
+        /**
+         * Write statements that render nodes on the model in modelVariable.
+         * When there are too many, they are moved to methods of their own.
+         */
+        private void emitNodes(List<Renderer> nodes, String modelVariable, StringBuilder body) {
+            if (nodes.size() > MAX_NODES_PER_METHOD) {
+                for (int start = 0; start < nodes.size(); start += MAX_NODES_PER_METHOD) {
+                    var chunk = nodes.subList(start, Math.min(nodes.size(), start + MAX_NODES_PER_METHOD));
+                    var method = newMethod();
+                    var methodBody = new StringBuilder();
+                    emitNodes(chunk, "model", methodBody);
+                    addMethod(method, methodBody);
+                    statement(body, method + "(" + modelVariable + ", outputWriter);");
+                }
+                return;
+            }
+            for (var node : nodes) {
+                if (node instanceof TextRenderer) {
+                    pack(packedTexts, ((TextRenderer) node).text);
+                    statement(body, "writeText(TEXTS[" + textCount + "], UTF8_TEXTS[" + textCount + "], outputWriter);");
+                    textCount++;
+                } else if (node instanceof NameRenderer) {
+                    var name = nameConstant(((NameRenderer) node).path, node.position());
+                    statement(body, "writeName(" + modelVariable + ", " + name + ", outputWriter);");
+                } else if (node instanceof NestedRenderer) {
+                    var method = emitNesting((NestedRenderer) node);
+                    statement(body, method + "(" + modelVariable + ", outputWriter);");
+                } else if (node instanceof IncludeRenderer) {
+                    emitNodes(nodesOf(((IncludeRenderer) node).partial.root()), modelVariable, body);
+                } else {
+                    emitNodes(nodesOf(node), modelVariable, body);
+                }
+            }
+        }
+
+        /**
+         * Write a method that renders nesting the way {@link NestedRenderer} does without custom renderers:
+         * as a boolean, as a loop, or as a single part on the nested value.
+         *
+         * @return the name of the method.
+         */
+        private String emitNesting(NestedRenderer nesting) {
+            var method = newMethod();
+            var parts = new ArrayList<Renderer>();
+            for (var part : nesting.parts) {
+                parts.add((Renderer) part);
+            }
+            var name = nameConstant(nesting.path, nesting.position());
+            var body = new StringBuilder();
+            statement(body, "Object value = resolve(model, " + name + ");");
+
+            statement(body, "if (value instanceof Boolean) {");
+            if (parts.size() == 1 || parts.size() == 2) {
+                statement(body, "if ((Boolean) value) {");
+                emitNodes(nodesOf(parts.get(0)), "model", body);
+                if (parts.size() == 2) {
+                    statement(body, "} else {");
+                    emitNodes(nodesOf(parts.get(1)), "model", body);
+                }
+                statement(body, "}");
+                statement(body, "return;");
+            } else {
+                statement(body, "throw fail(" + name + ", " + javaString(String.format("Wrong amount of parts (%d) for rendering boolean \"%s\".", parts.size(), nesting.name)) + ");");
+            }
+            statement(body, "}");
+
+            // Like CollectionRenderer, lists are walked by index, so no iterator is allocated for them.
+            statement(body, "List<?> list = randomAccessList(value);");
+            statement(body, "Iterator<?> iterator = list == null ? iterator(value, " + name + ") : null;");
+            statement(body, "if (list != null || iterator != null) {");
+            statement(body, "if (list != null ? list.isEmpty() : !iterator.hasNext()) {");
+            statement(body, "return;");
+            statement(body, "}");
+            Renderer leadIn = null, main = null, separator = null, leadOut = null;
+            switch (parts.size()) {
+                case 1 -> main = parts.get(0);
+                case 2 -> {
+                    main = parts.get(0);
+                    separator = parts.get(1);
+                }
+                case 4 -> {
+                    leadIn = parts.get(0);
+                    main = parts.get(1);
+                    separator = parts.get(2);
+                    leadOut = parts.get(3);
+                }
+                default -> statement(body, "throw fail(" + name + ", " + javaString(String.format("Wrong amount of parts (%d) for rendering loop \"%s\".", parts.size(), nesting.name)) + ");");
+            }
+            if (main != null) {
+                if (leadIn != null) {
+                    emitNodes(nodesOf(leadIn), "model", body);
+                }
+                statement(body, "int index = 0;");
+                statement(body, "while (list != null ? index < list.size() : iterator.hasNext()) {");
+                statement(body, "Object element = list != null ? list.get(index) : iterator.next();");
+                if (separator != null) {
+                    statement(body, "if (index > 0) {");
+                    emitNodes(nodesOf(separator), "element", body);
+                    statement(body, "}");
+                }
+                statement(body, "index++;");
+                emitNodes(nodesOf(main), "element", body);
+                statement(body, "}");
+                if (leadOut != null) {
+                    emitNodes(nodesOf(leadOut), "model", body);
+                }
+                statement(body, "return;");
+            }
+            statement(body, "}");
+
+            if (parts.size() == 1) {
+                emitNodes(nodesOf(parts.get(0)), "value", body);
+            } else {
+                statement(body, "throw fail(" + name + ", " + javaString(String.format("Don't know how to render %s.", nesting.name)) + ");");
+            }
+            addMethod(method, body);
+            return method;
+        }
+
+        private String nameConstant(NamePath path, Position position) {
+            if (!namesFromClassData) {
+                pack(packedNames, path.name);
+                pack(packedNames, Integer.toString(position.row));
+                pack(packedNames, Integer.toString(position.column));
+            }
+            names.add(new CompiledTemplate.Name(path.name, path, position));
+            return "NAMES[" + (names.size() - 1) + "]";
+        }
+
+        /**
+         * Add string to packed in the form that {@link CompiledTemplate#unpack(String...)} reads.
+         */
+        private static void pack(StringBuilder packed, String string) {
+            packed.append(string.length()).append(':').append(string);
+        }
+
+        /**
+         * @return the declaration of an array that is unpacked with unpackMethod from packed, split over string literals.
+         */
+        private static String packedArray(String type, String field, String unpackMethod, StringBuilder packed) {
+            var declaration = new StringBuilder();
+            declaration.append("    private static final ").append(type).append("[] ").append(field).append(" = ").append(unpackMethod).append('(');
+            for (int start = 0; start < packed.length(); start += MAX_CONSTANT_LENGTH) {
+                declaration.append(start == 0 ? "\n" : ",\n").append("            ")
+                        .append(javaString(packed.substring(start, Math.min(packed.length(), start + MAX_CONSTANT_LENGTH))));
+            }
+            return declaration.append(");\n").toString();
+        }
+
+        private String newMethod() {
+            return "render" + methodCount++;
+        }
+
+        private void addMethod(String method, StringBuilder body) {
+            methods.append("\n    private static void ").append(method).append("(Object model, Writer outputWriter) throws IOException {\n");
+            methods.append(indent(body));
+            methods.append("    }\n");
+        }
+
+        private static void statement(StringBuilder body, String statement) {
+            body.append(statement).append('\n');
+        }
+
+        /**
+         * @return the statements in body, indented by their depth in blocks.
+         */
+        private static String indent(StringBuilder body) {
+            var indented = new StringBuilder();
+            int depth = 2;
+            for (var line : body.toString().split("\n")) {
+                if (line.startsWith("}")) {
+                    depth--;
+                }
+                indented.append("    ".repeat(depth)).append(line).append('\n');
+                if (line.endsWith("{")) {
+                    depth++;
+                }
+            }
+            return indented.toString();
+        }
+
+        /**
+         * @return text as a Java string literal. Everything outside of printable ASCII is escaped,
+         * so the generated source reads the same in any encoding.
+         */
+        static String javaString(String text) {
+            var literal = new StringBuilder(text.length() + 2).append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '"' -> literal.append("\\\"");
+                    case '\\' -> literal.append("\\\\");
+                    case '\n' -> literal.append("\\n");
+                    case '\r' -> literal.append("\\r");
+                    case '\t' -> literal.append("\\t");
+                    default -> {
+                        if (c < 0x20 || c > 0x7e) {
+                            literal.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            literal.append(c);
+                        }
+                    }
+                }
+            }
+            return literal.append('"').toString();
+        }
+    }
+}
@@ -1,5 +1,13 @@
 package com.laamella.sout;
 
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.util.Objects.requireNonNull;
+
 /**
  * Everything that is configurable.
  */
@@ -8,9 +16,20 @@ public class SoutConfiguration {
     final char escapeChar;
     final char closeChar;
     final char separatorChar;
+    // These are null when they weren't supplied, so that rendering can skip them.
     final CustomNameRenderer customNameRenderer;
     final CustomTypeRenderer customTypeRenderer;
     final CustomIteratorFactory customIteratorFactory;
+    int parallelLoopThreshold = 0;
+    ForkJoinPool parallelLoopPool = ForkJoinPool.commonPool();
+    final Map<String, ValueFormat> formats = new HashMap<>();
+    final Map<String, FragmentCache> fragmentCaches = new HashMap<>();
+    RenderMetrics renderMetrics = null;
+    int compileThreshold = 0;
+    /**
+     * Shared with the templates, unlike the other settings, so that replacing a partial reaches them.
+     */
+    final Map<String, Partial> partials = new ConcurrentHashMap<>();
 
     /**
      * @param openChar              the character that opens a name or a nesting, like "{" or "<"
@@ -28,8 +47,129 @@ public class SoutConfiguration {
         this.escapeChar = escapeChar;
         this.closeChar = closeChar;
         this.separatorChar = separatorChar;
-        this.customNameRenderer = customNameRenderer == null ? (name, parts, model, scope, position, outputWriter) -> false : customNameRenderer;
-        this.customTypeRenderer = customTypeRenderer == null ? (name, parts, model, scope, parentModel, parentScope, position, outputWriter) -> false : customTypeRenderer;
-        this.customIteratorFactory = customIteratorFactory == null ? (model, scope, position) -> null : customIteratorFactory;
+        this.customNameRenderer = customNameRenderer;
+        this.customTypeRenderer = customTypeRenderer;
+        this.customIteratorFactory = customIteratorFactory;
+    }
+
+    /**
+     * Render loops over big lists and arrays in parallel.
+     * The elements are split in chunks that are rendered to separate buffers, each with its own copy of the
+     * {@link Scope}s around the loop. Variables that are set or updated while rendering an element are therefore only
+     * seen by the elements in the same chunk, and not after the loop.
+     * Only use this when your custom renderers can handle being called from multiple threads at once.
+     * <p>
+     * This only affects templates that are created after calling this method.
+     *
+     * @param threshold lists (that implement {@link java.util.RandomAccess}) and arrays
+     *                  with at least this many elements are rendered in parallel. 0 turns parallel rendering off.
+     * @param pool      the pool to render on.
+     */
+    public void setParallelLoops(int threshold, ForkJoinPool pool) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold can't be negative.");
+        }
+        this.parallelLoopThreshold = threshold;
+        this.parallelLoopPool = requireNonNull(pool);
+    }
+
+    /**
+     * Write the numbers found for a name with a fixed amount of decimals, rounding half up, like "3.14" for 2 decimals.
+     * Integers, longs, doubles, floats, BigDecimals and BigIntegers are formatted, other values are written as usual.
+     * <p>
+     * This only affects templates that are created after calling this method.
+     *
+     * @param name     the name as it is written in the template, like "order.total".
+     * @param decimals the amount of decimals, 0 to 9.
+     */
+    public void setDecimals(String name, int decimals) {
+        if (decimals < 0 || decimals > 9) {
+            throw new IllegalArgumentException("decimals must be 0 to 9.");
+        }
+        formats.put(requireNonNull(name), new DecimalsFormat(decimals));
+    }
+
+    /**
+     * Write the dates and times found for a name with formatter, like {@link DateTimeFormatter#ISO_LOCAL_DATE}.
+     * Values that aren't a {@link java.time.temporal.TemporalAccessor} are written as usual.
+     * <p>
+     * This only affects templates that are created after calling this method.
+     *
+     * @param name      the name as it is written in the template, like "order.date".
+     * @param formatter the formatter to use. These are thread-safe, so a single one is used for every render.
+     */
+    public void setDateTimeFormat(String name, DateTimeFormatter formatter) {
+        formats.put(requireNonNull(name), new DateTimeValueFormat(requireNonNull(formatter)));
+    }
+
+    /**
+     * Report render times, output sizes, loop sizes and name resolutions to metrics.
+     * This costs a little time on every render, so it is off by default.
+     * <p>
+     * This only affects templates that are created after calling this method.
+     *
+     * @param metrics where to report to, like a {@link StripedRenderMetrics}. null turns reporting off.
+     */
+    public void setRenderMetrics(RenderMetrics metrics) {
+        this.renderMetrics = metrics;
+    }
+
+    /**
+     * Keep the output of the nestings with this name in cache, and copy it from there when they are rendered on a value
+     * that was seen before. See {@link FragmentCache} for when this is safe to use.
+     * <p>
+     * This only affects templates that are created after calling this method.
+     *
+     * @param name  the name of the nesting as it is written in the template, like "product" for "{product|...}".
+     * @param cache the cache to use. It can be shared by multiple names.
+     */
+    public void setFragmentCache(String name, FragmentCache cache) {
+        fragmentCaches.put(requireNonNull(name), requireNonNull(cache));
+    }
+
+    /**
+     * Compile templates to Java bytecode after they have been rendered this many times,
+     * and render them with that from then on, instead of walking the parsed template.
+     * Compiling runs on a background thread with javac, so the java.compiler module has to be loaded,
+     * like it is for programs on the classpath of a full JDK. Without it, templates stay as they are.
+     * <p>
+     * Only templates that render in the standard way are compiled: not when there are custom renderers, formats, metrics,
+     * fragment caches, or parallel loops, and not when they include partials.
+     * Compiled templates don't emit "Slow Template Node" events, and {@link IncrementalRenderer} keeps using the parsed template.
+     * <p>
+     * This only affects templates that are created after calling this method.
+     *
+     * @param renders the amount of renders after which a template is compiled. 0, the default, turns compiling off.
+     */
+    public void setCompileThreshold(int renders) {
+        if (renders < 0) {
+            throw new IllegalArgumentException("renders can't be negative.");
+        }
+        this.compileThreshold = renders;
+    }
+
+    /**
+     * Make partial available to templates as "{@name}", which renders it on the model at that point,
+     * as if its text was written there. Every template that includes it shares its parsed form.
+     * Includes are looked up when a template is parsed, so a name that isn't set is reported right away.
+     * <p>
+     * Unlike the other settings, setting a partial again also affects the templates that were created before:
+     * they render the new version from then on, without being parsed again.
+     *
+     * @param name    the name as it is written in the template after the "@", like "header" for "{@header}".
+     * @param partial the template to include.
+     * @throws SoutException when partial includes name, directly or through other partials.
+     */
+    public void setPartial(String name, SoutTemplate partial) {
+        requireNonNull(partial);
+        partials.computeIfAbsent(requireNonNull(name), Partial::new).set(partial.rootRenderer);
+    }
+
+    /**
+     * @return the partial that was set for name, or null if there is none.
+     */
+    Partial findPartial(String name) {
+        var partial = partials.get(name);
+        return partial != null && partial.isSet() ? partial : null;
     }
 }
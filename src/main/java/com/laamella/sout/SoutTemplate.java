@@ -1,7 +1,18 @@
 package com.laamella.sout;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Function;
 
 import static java.util.Objects.requireNonNull;
 
@@ -9,7 +20,29 @@ import static java.util.Objects.requireNonNull;
  * A template. The main class of the sout library.
  */
 public class SoutTemplate {
-    private final ContainerRenderer rootRenderer;
+    final Renderer rootRenderer;
+    final RenderMetrics metrics;
+    final OutputSizeEstimate outputSize = new OutputSizeEstimate();
+    /**
+     * What the template is called in diagnostics, like the path it was loaded from. null when it is unknown.
+     */
+    final String name;
+    /**
+     * The class of the models this template was bound to, or null if it wasn't bound.
+     */
+    private final Class<?> modelClass;
+    final char openChar;
+    final char separatorChar;
+    final char closeChar;
+    final char escapeChar;
+    /**
+     * A checksum of the text the template was parsed from, to tell if a serialized template is still up to date.
+     */
+    final long sourceChecksum;
+    /**
+     * null when the template is never compiled.
+     */
+    final CompiledTier compiledTier;
 
     /**
      * Create a new template. It is parsed immediately, so be prepared to handle exceptions about invalid templates here.
@@ -17,14 +50,184 @@ public class SoutTemplate {
      * @throws SoutException when something goes wrong with parsing the template.
      */
     public SoutTemplate(Reader templateReader, SoutConfiguration configuration) {
-        requireNonNull(configuration);
+        this(null, readFully(templateReader), configuration);
+    }
+
+    /**
+     * Create a new template from text. It is parsed immediately, so be prepared to handle exceptions about invalid templates here.
+     *
+     * @throws SoutException when something goes wrong with parsing the template.
+     */
+    public SoutTemplate(CharSequence template, SoutConfiguration configuration) {
+        this(null, template, configuration);
+    }
+
+    /**
+     * Create a new template from text, bound to the type of the models it will render.
+     * Every name is looked up on that type, and on the types of the values and elements it leads to, right now.
+     * Names that don't exist are reported here, and rendering reads the values without looking for them.
+     * Where the type of a value can't be known, like for maps, Object, or interfaces, names are looked up while rendering as usual.
+     * <p>
+     * Generic types can be passed as a {@link ParameterizedType}, like the one from Guava's TypeToken.
+     *
+     * @param modelType the type of the models. Other models are refused by the render methods.
+     * @throws SoutException when something goes wrong with parsing the template, or a name doesn't exist.
+     */
+    public SoutTemplate(CharSequence template, Type modelType, SoutConfiguration configuration) {
+        this(null, template, configuration, configuration::findPartial, requireNonNull(modelType));
+    }
+
+    /**
+     * Create a new template from text, with a name for diagnostics.
+     */
+    SoutTemplate(String name, CharSequence template, SoutConfiguration configuration) {
+        this(name, template, configuration, configuration::findPartial, null);
+    }
+
+    /**
+     * Create a new template from text, with a name for diagnostics, and another place to find the partials it includes.
+     *
+     * @param partials finds the partial for an include by its name, or returns null when there is none.
+     */
+    SoutTemplate(String name, CharSequence template, SoutConfiguration configuration, Function<String, Partial> partials) {
+        this(name, template, configuration, partials, null);
+    }
+
+    private SoutTemplate(String name, CharSequence template, SoutConfiguration configuration, Function<String, Partial> partials, Type modelType) {
+        requireNonNull(template);
+        this.name = name;
+        metrics = configuration.renderMetrics;
+        rootRenderer = createParser(configuration, partials, this).parseTemplate(template, name);
+        openChar = configuration.openChar;
+        separatorChar = configuration.separatorChar;
+        closeChar = configuration.closeChar;
+        escapeChar = configuration.escapeChar;
+        sourceChecksum = SerializedTemplate.checksumOf(template);
+        if (modelType == null) {
+            modelClass = null;
+        } else {
+            if (modelType instanceof Class) {
+                // Primitive models arrive boxed.
+                modelClass = MethodType.methodType((Class<?>) modelType).wrap().returnType();
+            } else if (modelType instanceof ParameterizedType) {
+                modelClass = (Class<?>) ((ParameterizedType) modelType).getRawType();
+            } else {
+                throw new IllegalArgumentException("The model type must be a class or a parameterized type.");
+            }
+            new TypeBinder(configuration).bind(rootRenderer, modelType);
+        }
+        compiledTier = createCompiledTier(rootRenderer, configuration);
+    }
+
+    /**
+     * Create a new template from a file. The file is decoded straight into the String that the parser searches,
+     * which makes this the fastest way to parse big templates.
+     * It is parsed immediately, so be prepared to handle exceptions about invalid templates here.
+     *
+     * @throws SoutException when something goes wrong with reading or parsing the template.
+     */
+    public SoutTemplate(Path templateFile, Charset charset, SoutConfiguration configuration) {
+        this(templateFile.toString(), decode(templateFile, charset), configuration);
+    }
+
+    /**
+     * Load a template that was stored with {@link #writeTo(OutputStream)}, without parsing it.
+     * Custom renderers, formats and caches are taken from configuration, like when parsing,
+     * so a template can be stored once, and loaded with any configuration that has the same delimiters.
+     *
+     * @param serialized the stored template, from its position to its limit. The position is not changed.
+     * @throws SoutException when serialized isn't a stored template, is damaged, was stored by another version of sout,
+     *                       or has other delimiters than configuration.
+     */
+    public SoutTemplate(ByteBuffer serialized, SoutConfiguration configuration) {
+        requireNonNull(serialized);
+        var loaded = new SerializedTemplate(serialized, createParser(configuration, configuration::findPartial, this));
+        name = loaded.name;
+        metrics = configuration.renderMetrics;
+        rootRenderer = loaded.root;
+        modelClass = null;
+        openChar = configuration.openChar;
+        separatorChar = configuration.separatorChar;
+        closeChar = configuration.closeChar;
+        escapeChar = configuration.escapeChar;
+        sourceChecksum = loaded.sourceChecksum;
+        compiledTier = createCompiledTier(rootRenderer, configuration);
+    }
+
+    private static CompiledTier createCompiledTier(Renderer rootRenderer, SoutConfiguration configuration) {
+        if (configuration.compileThreshold == 0 || !CompiledTier.canCompile(rootRenderer, configuration)) {
+            return null;
+        }
+        return new CompiledTier(rootRenderer, configuration.compileThreshold);
+    }
+
+    private static String readFully(Reader templateReader) {
         requireNonNull(templateReader);
-        var parser = new SoutTemplateParser(
+        var source = new StringBuilder();
+        var buffer = new char[8192];
+        try {
+            int read;
+            while ((read = templateReader.read(buffer)) != -1) {
+                source.append(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new SoutException(new Position(0, 0), e);
+        }
+        return source.toString();
+    }
+
+    /**
+     * The parser searches a String, so the file is read into one directly.
+     * Memory mapping it would still need a decoded copy, and then another copy as a String.
+     */
+    private static String decode(Path templateFile, Charset charset) {
+        requireNonNull(charset);
+        try {
+            // Malformed input is reported, not replaced.
+            return Files.readString(templateFile, charset);
+        } catch (IOException e) {
+            throw new SoutException(new Position(0, 0), e);
+        }
+    }
+
+    /**
+     * @param template the template that is being created, whose nodes report their measurements for it.
+     */
+    private static SoutTemplateParser createParser(SoutConfiguration configuration, Function<String, Partial> partials, SoutTemplate template) {
+        return new SoutTemplateParser(
                 configuration.openChar, configuration.separatorChar, configuration.closeChar, configuration.escapeChar,
-                new IteratorFactory(configuration.customIteratorFactory),
+                new CollectionRenderer(new IteratorFactory(configuration.customIteratorFactory), configuration.parallelLoopThreshold, configuration.parallelLoopPool),
                 configuration.customNameRenderer,
-                configuration.customTypeRenderer);
-        rootRenderer = parser.parseTemplate(templateReader);
+                configuration.customTypeRenderer,
+                Map.copyOf(configuration.formats),
+                Map.copyOf(configuration.fragmentCaches),
+                partials,
+                configuration.renderMetrics,
+                template);
+    }
+
+    /**
+     * Store the parsed template in a compact binary form, so it can be loaded with
+     * {@link #SoutTemplate(ByteBuffer, SoutConfiguration)} faster than it can be parsed.
+     * The form records the version of the format, the delimiters, and a checksum of the source text.
+     *
+     * @throws SoutException when writing fails.
+     */
+    public void writeTo(OutputStream output) {
+        requireNonNull(output);
+        try {
+            SerializedTemplate.write(this, output);
+        } catch (IOException e) {
+            throw new SoutException(new Position(0, 0), e);
+        }
+    }
+
+    /**
+     * @return whether this template was parsed from source, or loaded from the stored form of a template that was.
+     * Use this to tell if a stored template is out of date.
+     */
+    public boolean isParsedFrom(CharSequence source) {
+        return SerializedTemplate.checksumOf(source) == sourceChecksum;
     }
 
     /**
@@ -36,7 +239,174 @@ public class SoutTemplate {
      */
     public void render(Object model, Writer outputWriter) {
         requireNonNull(outputWriter);
-        rootRenderer.render(model, new Scope(null), outputWriter);
+        checkModel(model);
+        var event = RenderEvent.beginIfRecorded();
+        if (metrics == null && event == null) {
+            renderRoot(model, outputWriter);
+            return;
+        }
+        long start = System.nanoTime();
+        if (outputWriter instanceof StringBuilderWriter) {
+            // Measured on the buffer, so the value writers keep their fast path for it.
+            var stringBuilder = ((StringBuilderWriter) outputWriter).stringBuilder;
+            int startLength = stringBuilder.length();
+            renderRoot(model, outputWriter);
+            rendered(event, start, stringBuilder.length() - startLength);
+            return;
+        }
+        var countingWriter = new CountingWriter(outputWriter);
+        renderRoot(model, countingWriter);
+        rendered(event, start, countingWriter.count);
+    }
+
+    /**
+     * Render a template to a String.
+     * This is faster than rendering to a StringWriter: it renders into a buffer that the thread reuses,
+     * made as big as the output of this template usually is, and doesn't synchronize.
+     *
+     * @param model the model containing the data that should be filled in the template.
+     * @throws SoutException when something goes wrong with rendering the template.
+     */
+    public String renderToString(Object model) {
+        var writer = StringBuilderWriter.borrow(outputSize.get());
+        try {
+            render(model, writer);
+            outputSize.record(writer.stringBuilder.length());
+            return writer.stringBuilder.toString();
+        } finally {
+            writer.giveBack();
+        }
+    }
+
+    /**
+     * Render a template to the end of a StringBuilder,
+     * after making room for as much output as this template usually renders.
+     *
+     * @param model  the model containing the data that should be filled in the template.
+     * @param output where the result will be appended.
+     * @throws SoutException when something goes wrong with rendering the template.
+     */
+    public void renderTo(Object model, StringBuilder output) {
+        requireNonNull(output);
+        int start = output.length();
+        output.ensureCapacity(start + outputSize.get());
+        render(model, new StringBuilderWriter(output));
+        outputSize.record(output.length() - start);
+    }
+
+    /**
+     * Render a template as UTF-8.
+     * The literal text in the template was encoded when the template was parsed, so only the values from the model are encoded here.
+     *
+     * @param model        the model containing the data that should be filled in the template.
+     * @param outputStream where the result will be written. It is not flushed or closed.
+     * @throws SoutException when something goes wrong with rendering the template.
+     */
+    public void render(Object model, OutputStream outputStream) {
+        requireNonNull(outputStream);
+        checkModel(model);
+        var event = RenderEvent.beginIfRecorded();
+        long start = metrics == null ? 0 : System.nanoTime();
+        var utf8Writer = new Utf8Writer(outputStream);
+        renderRoot(model, utf8Writer);
+        try {
+            utf8Writer.finish();
+        } catch (IOException e) {
+            throw new SoutException(new Position(0, 0), e);
+        }
+        rendered(event, start, utf8Writer.drainedBytes);
+    }
+
+    /**
+     * Render a template as UTF-8.
+     * The literal text in the template was encoded when the template was parsed, so only the values from the model are encoded here.
+     *
+     * @param model        the model containing the data that should be filled in the template.
+     * @param outputBuffer where the result will be written, starting at its position.
+     * @throws SoutException when something goes wrong with rendering the template, or when outputBuffer is too small.
+     */
+    public void render(Object model, ByteBuffer outputBuffer) {
+        requireNonNull(outputBuffer);
+        checkModel(model);
+        var event = RenderEvent.beginIfRecorded();
+        long start = metrics == null ? 0 : System.nanoTime();
+        int startPosition = outputBuffer.position();
+        var utf8Writer = new Utf8Writer(outputBuffer);
+        renderRoot(model, utf8Writer);
+        try {
+            utf8Writer.finish();
+        } catch (IOException e) {
+            throw new SoutException(new Position(0, 0), e);
+        }
+        rendered(event, start, outputBuffer.position() - startPosition);
+    }
+
+    /**
+     * Render the template once for every model, many at the same time.
+     * This is meant for jobs like sending a notification to every recipient in a list,
+     * especially when the model does slow things like reading files while it is rendered.
+     * <p>
+     * Renders run on virtual threads when the Java runtime has them, otherwise on a pool of maxConcurrency threads.
+     * Each render goes to a reused buffer first, so the output Writer is only asked for, written to, and closed
+     * when the render has succeeded.
+     *
+     * @param models         the models to render. They are taken one by one, while earlier ones are rendering.
+     * @param outputs        gives the Writer for a model. It is called from the rendering threads.
+     * @param maxConcurrency how many renders may run at the same time.
+     * @return how long rendering took, and which models failed. Failures don't stop the other renders.
+     * @throws SoutException when the calling thread is interrupted while waiting for the renders.
+     */
+    public BatchResult renderAll(Iterable<?> models, Function<Object, Writer> outputs, int maxConcurrency) {
+        requireNonNull(models);
+        requireNonNull(outputs);
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1.");
+        }
+        return new BatchRenderer(this, maxConcurrency).renderAll(models, outputs);
+    }
+
+    /**
+     * Render the whole template in the global scope of this thread.
+     */
+    void renderRoot(Object model, Writer outputWriter) {
+        if (compiledTier != null && !(outputWriter instanceof IncrementalWriter)) {
+            var compiled = compiledTier.rendering();
+            if (compiled != null) {
+                compiled.render(model, outputWriter);
+                return;
+            }
+        }
+        var scope = Scope.enterGlobal();
+        try {
+            rootRenderer.render(model, scope, outputWriter);
+        } finally {
+            scope.exit();
+        }
+    }
+
+    /**
+     * @throws SoutException when the template was bound to a model type, and model isn't of that type.
+     */
+    void checkModel(Object model) {
+        if (modelClass != null && !modelClass.isInstance(model)) {
+            throw new SoutException("This template renders %s, not %s.", modelClass.getName(), model == null ? "null" : model.getClass().getName());
+        }
+    }
+
+    /**
+     * Report a finished render to the metrics and to Java Flight Recorder, if they are listening.
+     *
+     * @param event the event from {@link RenderEvent#beginIfRecorded()}, or null.
+     */
+    private void rendered(RenderEvent event, long start, long outputSize) {
+        if (metrics != null) {
+            metrics.templateRendered(this, System.nanoTime() - start, outputSize);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.templateName = name;
+            event.outputSize = outputSize;
+            event.commit();
+        }
     }
 
     @Override
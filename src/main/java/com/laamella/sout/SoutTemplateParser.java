@@ -1,9 +1,10 @@
 package com.laamella.sout;
 
-import java.io.IOException;
-import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  * Parses a template to an AST. See {@link Renderer}.
@@ -13,83 +14,225 @@ class SoutTemplateParser {
     private final int separatorChar;
     private final int closeChar;
     private final int escapeChar;
-    private final NameResolver nameResolver = new NameResolver();
-    private final IteratorFactory iteratorFactory;
+    private final NameResolver nameResolver;
+    private final CollectionRenderer collectionRenderer;
     private final CustomNameRenderer customNameRenderer;
     private final CustomTypeRenderer customTypeRenderer;
+    private final Map<String, ValueFormat> formats;
+    private final Map<String, FragmentCache> fragmentCaches;
+    private final Function<String, Partial> partials;
+    private final RenderMetrics metrics;
+    private final SoutTemplate template;
 
+    /**
+     * @param partials finds the partial for an include by its name, or returns null when there is none.
+     * @param metrics  where the nodes report their measurements. null when nobody is measuring.
+     * @param template the template that the nodes are parsed for, which they report their measurements for.
+     */
     public SoutTemplateParser(
             int openChar, int separatorChar, int closeChar, int escapeChar,
-            IteratorFactory iteratorFactory,
+            CollectionRenderer collectionRenderer,
             CustomNameRenderer customNameRenderer,
-            CustomTypeRenderer customTypeRenderer) {
+            CustomTypeRenderer customTypeRenderer,
+            Map<String, ValueFormat> formats,
+            Map<String, FragmentCache> fragmentCaches,
+            Function<String, Partial> partials,
+            RenderMetrics metrics,
+            SoutTemplate template) {
         this.openChar = openChar;
         this.separatorChar = separatorChar;
         this.closeChar = closeChar;
         this.escapeChar = escapeChar;
-        this.iteratorFactory = iteratorFactory;
+        this.collectionRenderer = collectionRenderer;
         this.customNameRenderer = customNameRenderer;
         this.customTypeRenderer = customTypeRenderer;
+        this.formats = formats;
+        this.fragmentCaches = fragmentCaches;
+        this.partials = partials;
+        this.metrics = metrics;
+        this.template = template;
+        this.nameResolver = new NameResolver(metrics);
     }
 
+    /**
+     * A name that starts with this includes the partial with the rest of the name: "{@header}".
+     * An escaped marker is part of the name: "{\\@id}" renders the name "@id".
+     */
+    static final char INCLUDE_MARKER = '@';
+
     enum State {READING_NAME, READING_TEXT}
 
+    /**
+     * Walks through the template text, keeping track of where lines start for error messages.
+     */
     static class Context {
-        final Reader reader;
-        int row = 1, column = 0;
-        private Position lastPosition = new Position(1, 1);
+        final String source;
+        final int length;
+        final LineStarts lineStarts = new LineStarts();
+        /**
+         * The index of the next character to read.
+         */
+        int offset = 0;
+        private int lastOffset = 0;
+        private final int[] delimiters;
+        /**
+         * For every delimiter, the index of its next occurrence that was found, or the length of the template when there is none.
+         * An index below {@link #offset} has been passed, and is searched again when needed.
+         */
+        private final int[] nextDelimiters;
+        private int nextNewline = -1;
 
-        Context(Reader reader) {
-            this.reader = reader;
+        Context(CharSequence source, int... delimiters) {
+            this.source = source.toString();
+            this.length = source.length();
+            this.delimiters = delimiters;
+            this.nextDelimiters = new int[delimiters.length];
+            Arrays.fill(nextDelimiters, -1);
         }
 
-        public int read() throws IOException {
-            int c = reader.read();
+        public int read() {
+            int c = offset < length ? source.charAt(offset) : -1;
+            offset++;
             if (c == '\n') {
-                row++;
-                column = 1;
-            } else {
-                column++;
+                lineStarts.add(offset);
             }
             return c;
         }
 
-        public Position lastPosition() {
-            Position lastPosition = this.lastPosition;
-            this.lastPosition = new Position(column, row);
-            return lastPosition;
+        /**
+         * Skip over characters until one of the delimiters is found, or the end of the template.
+         * Every delimiter is looked for with String.indexOf, which the JVM runs on many characters at a time,
+         * and its next occurrence is remembered until the parser has passed it,
+         * so literal text is never looked at character by character.
+         *
+         * @return the index of the delimiter, or the length of the template.
+         */
+        public int skipToDelimiter() {
+            int from = offset;
+            int found = length;
+            for (int i = 0; i < delimiters.length; i++) {
+                int next = nextDelimiters[i];
+                if (next < from) {
+                    next = indexOf(delimiters[i], from);
+                    nextDelimiters[i] = next;
+                }
+                found = Math.min(found, next);
+            }
+            int newline = nextNewline;
+            if (newline < from) {
+                newline = indexOf('\n', from);
+            }
+            while (newline < found) {
+                lineStarts.add(newline + 1);
+                newline = indexOf('\n', newline + 1);
+            }
+            nextNewline = newline;
+            offset = found;
+            return found;
+        }
+
+        private int indexOf(int c, int from) {
+            int index = source.indexOf(c, from);
+            return index < 0 ? length : index;
+        }
+
+        /**
+         * @return the offset that was stored by the previous call, and store the offset of the character that was read last.
+         */
+        public int lastOffset() {
+            int lastOffset = this.lastOffset;
+            this.lastOffset = offset - 1;
+            return lastOffset;
         }
 
+        /**
+         * @return the position of the character that was read last.
+         */
         public Position thisPosition() {
-            return new Position(column, row);
+            return lineStarts.positionOf(offset - 1);
         }
     }
 
-    ContainerRenderer parseTemplate(Reader template) {
+    /**
+     * @param templateName a name for the template in diagnostics. Can be null.
+     */
+    Renderer parseTemplate(CharSequence template, String templateName) {
+        if (!ParseEvent.isRecorded()) {
+            return parseTemplate(template);
+        }
+        var event = new ParseEvent();
+        event.begin();
+        var root = parseTemplate(template);
+        if (event.shouldCommit()) {
+            event.templateName = templateName;
+            event.size = template.length();
+            event.nodeCount = root.nodeCount();
+            event.commit();
+        }
+        return root;
+    }
+
+    Renderer parseTemplate(CharSequence template) {
         var renderers = new ArrayList<Renderer>();
-        var context = new Context(template);
+        var context = new Context(template, openChar, separatorChar, closeChar, escapeChar);
         int c = parseRenderersIntoList(renderers, false, context);
         if (c == closeChar) {
             throw new SoutException(context.thisPosition(), "Unexpected closing %c at top level.", c);
         }
-        return new ContainerRenderer(new Position(0, 0), renderers);
+        context.lineStarts.trim();
+        return fold(context.lineStarts, -1, renderers);
+    }
+
+    /**
+     * Simplifies a list of renderers that would go in a container:
+     * empty text is dropped, adjacent text is merged, and when a single renderer remains, it is used instead of a container.
+     * A container that holds only text thereby becomes a single text renderer,
+     * which writes its text in one go without looking at the model or scope.
+     */
+    static Renderer fold(LineStarts lineStarts, int offset, List<Renderer> renderers) {
+        var folded = new ArrayList<Renderer>();
+        for (var renderer : renderers) {
+            if (renderer instanceof TextRenderer) {
+                var text = (TextRenderer) renderer;
+                if (text.text.isEmpty()) {
+                    continue;
+                }
+                int last = folded.size() - 1;
+                if (last >= 0 && folded.get(last) instanceof TextRenderer) {
+                    var previous = (TextRenderer) folded.get(last);
+                    folded.set(last, new TextRenderer(previous.text + text.text, lineStarts, previous.offset));
+                    continue;
+                }
+            }
+            folded.add(renderer);
+        }
+        if (folded.isEmpty()) {
+            return new TextRenderer("", lineStarts, offset);
+        }
+        if (folded.size() == 1) {
+            return folded.get(0);
+        }
+        return new ContainerRenderer(lineStarts, offset, folded);
     }
 
     private int parseRenderersIntoList(List<Renderer> renderers, boolean terminateOnSeparator, Context context) {
         State state = State.READING_TEXT;
         boolean nextCharIsLiteral = false;
+        // Whether the name being read starts with an escaped include marker, so it is not an include.
+        boolean nameStartsWithLiteralMarker = false;
         TextBuffer text = new TextBuffer();
         int c;
         while (true) {
-            try {
-                c = context.read();
-            } catch (IOException e) {
-                throw new SoutException(context.thisPosition(), e);
+            if (!nextCharIsLiteral) {
+                // Take everything up to the next special character in one go.
+                int start = context.offset;
+                text.append(context.source, start, context.skipToDelimiter());
             }
+            c = context.read();
             if (c == -1) {
                 switch (state) {
                     case READING_NAME -> throw new SoutException(context.thisPosition(), "Name %s was not closed before end of file.", text.consume());
-                    case READING_TEXT -> renderers.add(new TextRenderer(text.consume(), context.lastPosition()));
+                    case READING_TEXT -> renderers.add(new TextRenderer(text.consume(), context.lineStarts, context.lastOffset()));
                 }
                 return c;
             } else if (c == escapeChar && !nextCharIsLiteral) {
@@ -97,6 +240,9 @@ class SoutTemplateParser {
             } else if (nextCharIsLiteral) {
                 if (c == escapeChar || c == openChar || c == closeChar || c == separatorChar) {
                     text.append(c);
+                } else if (c == INCLUDE_MARKER && state == State.READING_NAME && !text.isNotEmpty()) {
+                    text.append(c);
+                    nameStartsWithLiteralMarker = true;
                 } else {
                     text.append('\\');
                     text.append(c);
@@ -107,13 +253,13 @@ class SoutTemplateParser {
                     case READING_TEXT -> {
                         if (c == openChar) {
                             if (text.isNotEmpty()) {
-                                renderers.add(new TextRenderer(text.consume(), context.lastPosition()));
+                                renderers.add(new TextRenderer(text.consume(), context.lineStarts, context.lastOffset()));
                             }
                             state = State.READING_NAME;
                         } else if (c == separatorChar) {
                             if (terminateOnSeparator) {
                                 if (text.isNotEmpty()) {
-                                    renderers.add(new TextRenderer(text.consume(), context.lastPosition()));
+                                    renderers.add(new TextRenderer(text.consume(), context.lineStarts, context.lastOffset()));
                                 }
                                 return c;
                             } else {
@@ -121,7 +267,7 @@ class SoutTemplateParser {
                             }
                         } else if (c == closeChar) {
                             if (text.isNotEmpty()) {
-                                renderers.add(new TextRenderer(text.consume(), context.lastPosition()));
+                                renderers.add(new TextRenderer(text.consume(), context.lineStarts, context.lastOffset()));
                             }
                             return c;
                         } else {
@@ -130,13 +276,23 @@ class SoutTemplateParser {
                     }
                     case READING_NAME -> {
                         if (c == separatorChar) {
+                            if (text.startsWith(INCLUDE_MARKER) && !nameStartsWithLiteralMarker) {
+                                throw new SoutException(context.thisPosition(), "Include %s can't have parts.", text.consume());
+                            }
+                            nameStartsWithLiteralMarker = false;
                             NestedRenderer nestedNode = parseNestingRenderer(text.consume(), context);
                             renderers.add(nestedNode);
                             state = State.READING_TEXT;
                         } else if (c == openChar) {
                             throw new SoutException(context.thisPosition(), "Unexpected open %c in name.", c);
                         } else if (c == closeChar) {
-                            renderers.add(new NameRenderer(text.consume(), context.lastPosition(), nameResolver, customNameRenderer, customTypeRenderer));
+                            if (text.startsWith(INCLUDE_MARKER) && !nameStartsWithLiteralMarker) {
+                                var position = context.thisPosition();
+                                renderers.add(newIncludeRenderer(text.consume().substring(1), context.lineStarts, context.lastOffset(), position));
+                            } else {
+                                renderers.add(newNameRenderer(text.consume(), context.lineStarts, context.lastOffset()));
+                            }
+                            nameStartsWithLiteralMarker = false;
                             state = State.READING_TEXT;
                         } else {
                             text.append(c);
@@ -149,16 +305,53 @@ class SoutTemplateParser {
 
     private NestedRenderer parseNestingRenderer(String name, Context context) {
         int closeChar;
-        var nestedParts = new ArrayList<ContainerRenderer>();
+        var nestedParts = new ArrayList<Renderer>();
         do {
             var renderersInNestedPart = new ArrayList<Renderer>();
             closeChar = parseRenderersIntoList(renderersInNestedPart, true, context);
-            nestedParts.add(new ContainerRenderer(context.lastPosition(), renderersInNestedPart));
+            nestedParts.add(fold(context.lineStarts, context.lastOffset(), renderersInNestedPart));
         } while (closeChar == separatorChar);
         if (closeChar == -1) {
             throw new SoutException(context.thisPosition(), "End of template while reading a nesting.");
         }
-        Renderable[] parts = nestedParts.stream().map(Renderable.class::cast).toArray(Renderable[]::new);
-        return new NestedRenderer(name, context.lastPosition(), nameResolver, customNameRenderer, customTypeRenderer, iteratorFactory, parts);
+        Renderable[] parts = nestedParts.toArray(new Renderable[0]);
+        return newNestedRenderer(name, context.lineStarts, context.lastOffset(), parts);
+    }
+
+    /**
+     * @return a node for name, with what the configuration has for it attached.
+     */
+    NameRenderer newNameRenderer(String name, LineStarts lineStarts, int offset) {
+        return new NameRenderer(new NamePath(name), lineStarts, offset, nameResolver, customNameRenderer, customTypeRenderer, formats.get(name), nodeMetrics(lineStarts, offset));
+    }
+
+    /**
+     * @return a node for a nesting into name, with what the configuration has for it attached.
+     */
+    NestedRenderer newNestedRenderer(String name, LineStarts lineStarts, int offset, Renderable[] parts) {
+        return new NestedRenderer(new NamePath(name), lineStarts, offset, nameResolver, customNameRenderer, customTypeRenderer, collectionRenderer, fragmentCaches.get(name), nodeMetrics(lineStarts, offset), parts);
+    }
+
+    private NodeMetrics nodeMetrics(LineStarts lineStarts, int offset) {
+        return metrics == null ? null : new NodeMetrics(metrics, template, lineStarts.positionOf(offset));
+    }
+
+    /**
+     * @return a node that includes the partial called name.
+     * @throws SoutException when there is no partial called name.
+     */
+    IncludeRenderer newIncludeRenderer(String name, LineStarts lineStarts, int offset, Position position) {
+        var partial = partials.apply(name);
+        if (partial == null) {
+            throw new SoutException(position, "Partial %s not found.", name);
+        }
+        return new IncludeRenderer(partial, lineStarts, offset);
+    }
+
+    /**
+     * @return whether this parser uses these delimiters.
+     */
+    boolean hasDelimiters(int openChar, int separatorChar, int closeChar, int escapeChar) {
+        return this.openChar == openChar && this.separatorChar == separatorChar && this.closeChar == closeChar && this.escapeChar == escapeChar;
     }
 }
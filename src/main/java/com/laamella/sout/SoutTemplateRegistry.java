@@ -0,0 +1,480 @@
+package com.laamella.sout;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardWatchEventKinds.*;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Loads templates by name from a directory or from the classpath, and keeps the most recently used ones parsed.
+ * <p>
+ * The amount of templates kept, and their total size in characters, are limited.
+ * When a limit is exceeded, the least recently used templates are dropped, and parsed again when they are asked for.
+ * <p>
+ * Templates loaded from a directory are watched: when a file changes, its template is parsed again and replaced.
+ * Renders that are busy with the old template finish with the old template.
+ * <p>
+ * Templates can include each other by name, like "{@mail/header.sout}", unless a partial with that name is set on the configuration.
+ * A template that is included is parsed once and shared by all templates that include it,
+ * and when its file changes, they render the new version without being parsed again.
+ * It is forgotten when none of the templates that include it are in use anymore.
+ * <p>
+ * Templates are read as UTF-8. A registry can be used from multiple threads at once.
+ */
+public class SoutTemplateRegistry implements AutoCloseable {
+    private final SoutConfiguration configuration;
+    private final Path directory;
+    /**
+     * The directory with all symbolic links resolved, to check that templates don't link to files outside it.
+     */
+    private final Path realDirectory;
+    private final ClassLoader classLoader;
+    private final String classPathRoot;
+    private final int maxTemplates;
+    private final long maxTotalSize;
+    private final WatchService watchService;
+
+    // Guarded by itself.
+    private final LinkedHashMap<String, Entry> templates = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize = 0;
+    /**
+     * The loads and reloads that are running, per name. Other threads that want the same template wait for them,
+     * so a template is parsed only once when many threads ask for it,
+     * and a reload can't be overwritten by a load of the old file that started before it.
+     * Templates with different names load at the same time.
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    /**
+     * The templates that other templates include, so they can be shared and reloaded.
+     * Only the including templates hold on to them: once none of those are in use, the partial is garbage collected.
+     */
+    final ConcurrentHashMap<String, PartialReference> partials = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Partial> collectedPartials = new ReferenceQueue<>();
+    /**
+     * The names of the templates that the current thread is loading, in order, to find templates that include themselves.
+     */
+    private final ThreadLocal<LinkedHashSet<String>> loading = ThreadLocal.withInitial(LinkedHashSet::new);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+
+    static final class PartialReference extends WeakReference<Partial> {
+        final String name;
+
+        PartialReference(Partial partial, ReferenceQueue<Partial> queue) {
+            super(partial, queue);
+            this.name = partial.name;
+        }
+    }
+
+    private static final class Entry {
+        final SoutTemplate template;
+        final int size;
+
+        Entry(SoutTemplate template, int size) {
+            this.template = template;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Load templates from files in a directory, and reload them when they change.
+     *
+     * @param directory     the directory that template names are relative to.
+     * @param configuration the configuration for all templates in this registry.
+     * @param maxTemplates  the maximum amount of parsed templates to keep.
+     * @param maxTotalSize  the maximum total size, in characters, of the parsed templates to keep.
+     * @throws SoutException when the directory can't be watched.
+     */
+    public SoutTemplateRegistry(Path directory, SoutConfiguration configuration, int maxTemplates, long maxTotalSize) {
+        this(requireNonNull(directory).toAbsolutePath().normalize(), null, null, configuration, maxTemplates, maxTotalSize);
+    }
+
+    /**
+     * Load templates from the classpath. These are never reloaded.
+     *
+     * @param classLoader   the class loader to load templates with.
+     * @param classPathRoot the resource path that template names are relative to, like "templates".
+     * @param configuration the configuration for all templates in this registry.
+     * @param maxTemplates  the maximum amount of parsed templates to keep.
+     * @param maxTotalSize  the maximum total size, in characters, of the parsed templates to keep.
+     */
+    public SoutTemplateRegistry(ClassLoader classLoader, String classPathRoot, SoutConfiguration configuration, int maxTemplates, long maxTotalSize) {
+        this(null, requireNonNull(classLoader), requireNonNull(classPathRoot), configuration, maxTemplates, maxTotalSize);
+    }
+
+    private SoutTemplateRegistry(Path directory, ClassLoader classLoader, String classPathRoot, SoutConfiguration configuration, int maxTemplates, long maxTotalSize) {
+        if (maxTemplates < 1 || maxTotalSize < 1) {
+            throw new IllegalArgumentException("The limits must be at least 1.");
+        }
+        this.configuration = requireNonNull(configuration);
+        this.directory = directory;
+        this.classLoader = classLoader;
+        this.classPathRoot = classPathRoot == null ? null : stripSlashes(classPathRoot);
+        this.maxTemplates = maxTemplates;
+        this.maxTotalSize = maxTotalSize;
+        if (directory == null) {
+            realDirectory = null;
+            watchService = null;
+            return;
+        }
+        try {
+            realDirectory = directory.toRealPath();
+            watchService = FileSystems.getDefault().newWatchService();
+            registerDirectoryTree(directory);
+        } catch (IOException e) {
+            throw new SoutException("Can't watch directory %s: %s", directory, e);
+        }
+        var watcher = new Thread(this::watch, "sout template watcher for " + directory);
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * @param name the name of the template, which is its path relative to the directory or classpath root, like "mail/hello.sout".
+     * @return the parsed template.
+     * @throws SoutException when the template can't be found, read, or parsed.
+     */
+    public SoutTemplate get(String name) {
+        requireNonNull(name);
+        var loadingNames = loading.get();
+        while (true) {
+            synchronized (templates) {
+                var entry = templates.get(name);
+                if (entry != null) {
+                    hits.increment();
+                    return entry.template;
+                }
+            }
+            if (loadingNames.contains(name)) {
+                throw new SoutException("Include cycle: %s → %s.", String.join(" → ", loadingNames), name);
+            }
+            var claim = new CompletableFuture<Entry>();
+            var running = inFlight.putIfAbsent(name, claim);
+            if (running == null) {
+                return loadClaimed(name, claim);
+            }
+            if (!loadingNames.isEmpty()) {
+                // This thread is loading an include, and another thread may be waiting for a template this thread is loading.
+                // Waiting here could then wait forever, so the include is parsed once more instead.
+                misses.increment();
+                return load(name).template;
+            }
+            var entry = await(running);
+            if (entry != null) {
+                hits.increment();
+                return entry.template;
+            }
+            // It was a reload of a template that wasn't kept. Look again.
+        }
+    }
+
+    /**
+     * Load the template called name, now that this thread has claimed it in {@link #inFlight}.
+     */
+    private SoutTemplate loadClaimed(String name, CompletableFuture<Entry> claim) {
+        try {
+            Entry entry;
+            synchronized (templates) {
+                // Another thread may have loaded it after this one looked.
+                entry = templates.get(name);
+            }
+            if (entry != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                entry = load(name);
+                synchronized (templates) {
+                    put(name, entry);
+                }
+            }
+            claim.complete(entry);
+            return entry.template;
+        } catch (Throwable e) {
+            claim.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(name, claim);
+        }
+    }
+
+    /**
+     * @return the entry that another thread loaded, or null when it had nothing to load.
+     * @throws SoutException when loading failed in the other thread.
+     */
+    private static Entry await(CompletableFuture<Entry> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return how often a template was asked for that was already parsed.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return how often a template was asked for that had to be loaded and parsed.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return how often a template was dropped to stay within the limits.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return how often a template was parsed again because its file changed.
+     */
+    public long getReloads() {
+        return reloads.sum();
+    }
+
+    /**
+     * Stop watching the directory for changes.
+     */
+    @Override
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private Entry load(String name) {
+        var loadingNames = loading.get();
+        if (!loadingNames.add(name)) {
+            throw new SoutException("Include cycle: %s → %s.", String.join(" → ", loadingNames), name);
+        }
+        try {
+            var source = readSource(name);
+            var template = new SoutTemplate(name, source, configuration, this::findPartial);
+            return new Entry(template, source.length());
+        } finally {
+            loadingNames.remove(name);
+        }
+    }
+
+    /**
+     * @return the partial for an include in one of the templates:
+     * the one set on the configuration, or else the template called name in this registry.
+     * @throws SoutException when the template can't be found, read, or parsed.
+     */
+    private Partial findPartial(String name) {
+        var configured = configuration.findPartial(name);
+        if (configured != null) {
+            return configured;
+        }
+        forgetCollectedPartials();
+        Partial partial;
+        do {
+            var created = new Partial(name);
+            partial = partials.compute(name, (n, old) -> old != null && old.get() != null ? old : new PartialReference(created, collectedPartials)).get();
+        } while (partial == null);
+        if (!partial.isSet()) {
+            partial.set(get(name).rootRenderer);
+        }
+        return partial;
+    }
+
+    /**
+     * @return the partial called name, if some template that is in use includes it, otherwise null.
+     */
+    private Partial keptPartial(String name) {
+        var reference = partials.get(name);
+        return reference == null ? null : reference.get();
+    }
+
+    private void forgetCollectedPartials() {
+        PartialReference reference;
+        while ((reference = (PartialReference) collectedPartials.poll()) != null) {
+            partials.remove(reference.name, reference);
+        }
+    }
+
+    private String readSource(String name) {
+        try {
+            if (directory != null) {
+                var path = directory.resolve(name).normalize();
+                if (!path.startsWith(directory) || !Files.isRegularFile(path) || !path.toRealPath().startsWith(realDirectory)) {
+                    throw new SoutException("Template %s not found in %s.", name, directory);
+                }
+                return Files.readString(path, UTF_8);
+            }
+            var resourceName = stripSlashes(name);
+            boolean leavesRoot = false;
+            for (var segment : resourceName.split("[/\\\\]")) {
+                leavesRoot |= segment.equals("..");
+            }
+            try (var inputStream = leavesRoot ? null : classLoader.getResourceAsStream(classPathRoot + "/" + resourceName)) {
+                if (inputStream == null) {
+                    throw new SoutException("Template %s not found in classpath root %s.", name, classPathRoot);
+                }
+                return new String(inputStream.readAllBytes(), UTF_8);
+            }
+        } catch (IOException e) {
+            throw new SoutException("Template %s can't be read: %s", name, e);
+        }
+    }
+
+    // Call while holding the lock on templates.
+    private void put(String name, Entry entry) {
+        var old = templates.put(name, entry);
+        if (old != null) {
+            totalSize -= old.size;
+        }
+        totalSize += entry.size;
+        var iterator = templates.entrySet().iterator();
+        // Always keep the template that was just added, even when it is bigger than the limit by itself.
+        while ((templates.size() > maxTemplates || totalSize > maxTotalSize) && templates.size() > 1) {
+            var eldest = iterator.next();
+            totalSize -= eldest.getValue().size;
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private void registerDirectoryTree(Path root) throws IOException {
+        try (var directories = Files.walk(root)) {
+            for (Path d : (Iterable<Path>) directories.filter(Files::isDirectory)::iterator) {
+                d.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+        }
+    }
+
+    private void watch() {
+        while (true) {
+            try {
+                var key = watchService.take();
+                var watchedDirectory = (Path) key.watchable();
+                for (var event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        ArrayList<String> names;
+                        synchronized (templates) {
+                            names = new ArrayList<>(templates.keySet());
+                        }
+                        names.forEach(this::reload);
+                        continue;
+                    }
+                    var changed = watchedDirectory.resolve((Path) event.context());
+                    if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed)) {
+                        registerDirectoryTree(changed);
+                        continue;
+                    }
+                    reload(directory.relativize(changed).toString().replace(changed.getFileSystem().getSeparator(), "/"));
+                }
+                key.reset();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (IOException e) {
+                // A new directory disappeared before it could be watched. Nothing to do.
+            }
+        }
+    }
+
+    /**
+     * Replace the template called name, if it is kept or included, with a freshly parsed version.
+     * When that fails, it is dropped, so that the next {@link #get(String)} reports the problem,
+     * but the templates that include it keep rendering the version they have.
+     */
+    private void reload(String name) {
+        var claim = new CompletableFuture<Entry>();
+        CompletableFuture<Entry> running;
+        while ((running = inFlight.putIfAbsent(name, claim)) != null) {
+            // Let the load that is running finish first, so that it doesn't replace the reload with the old file.
+            running.handle((entry, e) -> null).join();
+        }
+        Entry entry = null;
+        try {
+            entry = reloadClaimed(name);
+        } finally {
+            claim.complete(entry);
+            inFlight.remove(name, claim);
+        }
+    }
+
+    /**
+     * Reload the template called name, now that this thread has claimed it in {@link #inFlight}.
+     *
+     * @return the new entry when the template is kept, otherwise null.
+     */
+    private Entry reloadClaimed(String name) {
+        forgetCollectedPartials();
+        var partial = keptPartial(name);
+        synchronized (templates) {
+            if (!templates.containsKey(name) && partial == null) {
+                return null;
+            }
+        }
+        Entry entry;
+        try {
+            entry = load(name);
+            if (partial != null) {
+                partial.set(entry.template.rootRenderer);
+            }
+        } catch (SoutException e) {
+            entry = null;
+        }
+        boolean kept;
+        synchronized (templates) {
+            var old = templates.remove(name);
+            kept = old != null;
+            if (kept) {
+                totalSize -= old.size;
+                if (entry != null) {
+                    put(name, entry);
+                }
+            }
+        }
+        if (entry != null && (kept || partial != null)) {
+            reloads.increment();
+        }
+        return kept ? entry : null;
+    }
+
+    private static String stripSlashes(String path) {
+        int start = 0, end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+}
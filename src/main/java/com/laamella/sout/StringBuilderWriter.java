@@ -0,0 +1,107 @@
+package com.laamella.sout;
+
+import java.io.Writer;
+
+/**
+ * A Writer that appends to a StringBuilder.
+ * Unlike {@link java.io.StringWriter}, it doesn't synchronize.
+ */
+final class StringBuilderWriter extends Writer {
+    /**
+     * Builders that grew bigger than this are not reused, so that one huge render doesn't hold on to its memory.
+     */
+    private static final int MAX_REUSED_CAPACITY = 1 << 20;
+    /**
+     * A writer per thread, reused by {@link #borrow(int)}.
+     */
+    private static final ThreadLocal<StringBuilderWriter> reusableWriters = ThreadLocal.withInitial(() -> new StringBuilderWriter(new StringBuilder()));
+
+    final StringBuilder stringBuilder;
+    private boolean borrowed = false;
+
+    StringBuilderWriter(StringBuilder stringBuilder) {
+        this.stringBuilder = stringBuilder;
+    }
+
+    /**
+     * @return an empty writer with room for expectedSize characters.
+     * It is the one that this thread reused before, unless that one is busy.
+     * Call {@link #giveBack()} on it when its contents are no longer needed.
+     */
+    static StringBuilderWriter borrow(int expectedSize) {
+        var writer = reusableWriters.get();
+        if (writer.borrowed) {
+            // Rendering inside a render, like from a custom renderer.
+            return new StringBuilderWriter(new StringBuilder(expectedSize));
+        }
+        writer.borrowed = true;
+        writer.stringBuilder.ensureCapacity(expectedSize);
+        return writer;
+    }
+
+    /**
+     * Let a writer from {@link #borrow(int)} be reused.
+     */
+    void giveBack() {
+        if (!borrowed) {
+            return;
+        }
+        borrowed = false;
+        if (stringBuilder.capacity() > MAX_REUSED_CAPACITY) {
+            reusableWriters.remove();
+        } else {
+            stringBuilder.setLength(0);
+        }
+    }
+
+    @Override
+    public void write(int c) {
+        stringBuilder.append((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        stringBuilder.append(chars, offset, length);
+    }
+
+    @Override
+    public void write(String string) {
+        stringBuilder.append(string);
+    }
+
+    @Override
+    public void write(String string, int offset, int length) {
+        stringBuilder.append(string, offset, offset + length);
+    }
+
+    @Override
+    public Writer append(CharSequence charSequence) {
+        stringBuilder.append(charSequence);
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence charSequence, int start, int end) {
+        stringBuilder.append(charSequence, start, end);
+        return this;
+    }
+
+    @Override
+    public Writer append(char c) {
+        stringBuilder.append(c);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,291 @@
+package com.laamella.sout;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * {@link RenderMetrics} that counts in {@link LongAdder}s, so many threads can record at once without waiting for each other.
+ * <p>
+ * The measurements of a template are only kept while the template is, so they are garbage collected along with it.
+ * Loops and nodes are measured per template and position. The nodes of an included template are measured for the
+ * included template.
+ */
+public class StripedRenderMetrics implements RenderMetrics {
+    private static final RenderMetrics.ResolutionStrategy[] strategies = RenderMetrics.ResolutionStrategy.values();
+
+    private final LongAdder[] resolved = newAdders(strategies.length);
+    private final LongAdder[] notResolved = newAdders(strategies.length);
+    private final LongAdder notResolvedOnNull = new LongAdder();
+    /**
+     * The measurements per template, by {@link TemplateKey}. Looked up with a {@link TemplateLookup}.
+     */
+    private final ConcurrentHashMap<Object, TemplateMetrics> templateMetrics = new ConcurrentHashMap<>();
+    private final ReferenceQueue<SoutTemplate> collectedTemplates = new ReferenceQueue<>();
+
+    /**
+     * Measures nothing yet.
+     */
+    public StripedRenderMetrics() {
+    }
+
+    /**
+     * Holds a template weakly, and equals the {@link TemplateLookup} for the same template.
+     */
+    private static final class TemplateKey extends WeakReference<SoutTemplate> {
+        private final int hash;
+
+        TemplateKey(SoutTemplate template, ReferenceQueue<SoutTemplate> queue) {
+            super(template, queue);
+            hash = System.identityHashCode(template);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            var template = get();
+            return template != null && o instanceof TemplateKey && ((TemplateKey) o).get() == template;
+        }
+    }
+
+    /**
+     * The key to look a template up with, without creating a reference to it.
+     */
+    private static final class TemplateLookup {
+        private final SoutTemplate template;
+
+        TemplateLookup(SoutTemplate template) {
+            this.template = template;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(template);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TemplateKey && ((TemplateKey) o).get() == template;
+        }
+    }
+
+    /**
+     * The measurements for one template.
+     */
+    public static final class TemplateMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder outputSize = new LongAdder();
+        private final Map<Position, LatencyHistogram> nodeLatencies = new ConcurrentHashMap<>();
+        private final Map<Position, LongAdder> loopIterations = new ConcurrentHashMap<>();
+
+        private TemplateMetrics() {
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return the total output size of all renders. See {@link RenderMetrics#templateRendered(SoutTemplate, long, long)}.
+         */
+        public long getOutputSize() {
+            return outputSize.sum();
+        }
+
+        /**
+         * @return the durations of the renders of the name or nesting at position, including the nodes inside it,
+         * or null if it wasn't rendered yet.
+         */
+        public LatencyHistogram getNodeLatency(Position position) {
+            return nodeLatencies.get(position);
+        }
+
+        /**
+         * @return the durations of the renders of every name and nesting that was rendered, by position.
+         */
+        public Map<Position, LatencyHistogram> getNodeLatencies() {
+            return Map.copyOf(nodeLatencies);
+        }
+
+        /**
+         * @return the total amount of elements rendered by the loop at position.
+         */
+        public long getLoopIterations(Position position) {
+            var adder = loopIterations.get(position);
+            return adder == null ? 0 : adder.sum();
+        }
+
+        /**
+         * @return the total amount of elements rendered, for every loop that was rendered, by position.
+         */
+        public Map<Position, Long> getLoopIterations() {
+            return loopIterations.entrySet().stream().collect(toMap(Map.Entry::getKey, e -> e.getValue().sum()));
+        }
+    }
+
+    /**
+     * Counts durations in buckets that double in size: bucket i holds durations of at least 2^(i-1) and less than 2^i nanoseconds.
+     */
+    public static final class LatencyHistogram {
+        private final LongAdder[] buckets = newAdders(64);
+        private final LongAdder totalNanos = new LongAdder();
+
+        private LatencyHistogram() {
+        }
+
+        void record(long nanos) {
+            buckets[64 - Long.numberOfLeadingZeros(Math.max(0, nanos))].increment();
+            totalNanos.add(nanos);
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (var bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * @return the amount of durations in each bucket.
+         */
+        public long[] getBucketCounts() {
+            var counts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return counts;
+        }
+
+        /**
+         * @param percentile a number from 0 to 100.
+         * @return an upper bound for the duration that percentile of the renders stayed under, in nanoseconds.
+         */
+        public long getPercentile(double percentile) {
+            var counts = getBucketCounts();
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            long wanted = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= wanted && seen > 0) {
+                    return i == 63 ? Long.MAX_VALUE : (1L << i) - 1;
+                }
+            }
+            return 0;
+        }
+    }
+
+    @Override
+    public void templateRendered(SoutTemplate template, long nanos, long outputSize) {
+        var metrics = metricsOf(template);
+        if (metrics != null) {
+            metrics.latency.record(nanos);
+            metrics.outputSize.add(outputSize);
+        }
+    }
+
+    @Override
+    public void nodeRendered(SoutTemplate template, Position position, long nanos) {
+        var metrics = metricsOf(template);
+        if (metrics != null) {
+            var latency = metrics.nodeLatencies.get(position);
+            if (latency == null) {
+                latency = metrics.nodeLatencies.computeIfAbsent(position, p -> new LatencyHistogram());
+            }
+            latency.record(nanos);
+        }
+    }
+
+    @Override
+    public void loopRendered(SoutTemplate template, Position position, int iterations) {
+        var metrics = metricsOf(template);
+        if (metrics != null) {
+            var adder = metrics.loopIterations.get(position);
+            if (adder == null) {
+                adder = metrics.loopIterations.computeIfAbsent(position, p -> new LongAdder());
+            }
+            adder.add(iterations);
+        }
+    }
+
+    /**
+     * @return the measurements of template, created when needed.
+     */
+    private TemplateMetrics metricsOf(SoutTemplate template) {
+        var metrics = templateMetrics.get(new TemplateLookup(template));
+        if (metrics != null) {
+            return metrics;
+        }
+        forgetCollectedTemplates();
+        var created = new TemplateMetrics();
+        metrics = templateMetrics.putIfAbsent(new TemplateKey(template, collectedTemplates), created);
+        return metrics == null ? created : metrics;
+    }
+
+    private void forgetCollectedTemplates() {
+        Reference<? extends SoutTemplate> key;
+        while ((key = collectedTemplates.poll()) != null) {
+            templateMetrics.remove(key);
+        }
+    }
+
+    @Override
+    public void nameResolved(ResolutionStrategy strategy) {
+        resolved[strategy.ordinal()].increment();
+    }
+
+    @Override
+    public void nameNotResolved(ResolutionStrategy strategy) {
+        if (strategy == null) {
+            notResolvedOnNull.increment();
+        } else {
+            notResolved[strategy.ordinal()].increment();
+        }
+    }
+
+    /**
+     * @return the measurements for template, or null if it wasn't rendered yet.
+     */
+    public TemplateMetrics getTemplateMetrics(SoutTemplate template) {
+        return templateMetrics.get(new TemplateLookup(template));
+    }
+
+    public long getResolutions(ResolutionStrategy strategy) {
+        return resolved[strategy.ordinal()].sum();
+    }
+
+    /**
+     * @param strategy see {@link RenderMetrics#nameNotResolved(ResolutionStrategy)}. null for failures on null models.
+     */
+    public long getResolutionFailures(ResolutionStrategy strategy) {
+        return strategy == null ? notResolvedOnNull.sum() : notResolved[strategy.ordinal()].sum();
+    }
+
+    private static LongAdder[] newAdders(int amount) {
+        var adders = new LongAdder[amount];
+        for (int i = 0; i < amount; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
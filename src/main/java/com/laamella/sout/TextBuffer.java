@@ -2,30 +2,71 @@ package com.laamella.sout;
 
 /**
  * Simple wrapper around StringBuilder to make the parser's life easier.
+ * A piece of text that is appended in one go is remembered as a slice of the template,
+ * and only copied to the StringBuilder when more text is appended to it.
  */
 final class TextBuffer {
     private final StringBuilder stringBuilder = new StringBuilder();
+    private CharSequence slice = null;
+    private int sliceStart, sliceEnd;
 
     boolean isNotEmpty() {
-        return stringBuilder.length() > 0;
+        return slice != null || stringBuilder.length() > 0;
+    }
+
+    boolean startsWith(char c) {
+        if (slice != null) {
+            return slice.charAt(sliceStart) == c;
+        }
+        return stringBuilder.length() > 0 && stringBuilder.charAt(0) == c;
     }
 
     void append(int c) {
+        copySlice();
         stringBuilder.append((char) c);
     }
 
-    String consume(){
-        String val = stringBuilder.toString();
+    void append(CharSequence source, int start, int end) {
+        if (start == end) {
+            return;
+        }
+        if (slice == null && stringBuilder.length() == 0) {
+            slice = source;
+            sliceStart = start;
+            sliceEnd = end;
+            return;
+        }
+        if (slice == source && sliceEnd == start) {
+            sliceEnd = end;
+            return;
+        }
+        copySlice();
+        stringBuilder.append(source, start, end);
+    }
+
+    private void copySlice() {
+        if (slice != null) {
+            stringBuilder.append(slice, sliceStart, sliceEnd);
+            slice = null;
+        }
+    }
+
+    String consume() {
+        String val = toString();
         clear();
         return val;
     }
 
     @Override
     public String toString() {
+        if (slice != null) {
+            return slice.subSequence(sliceStart, sliceEnd).toString();
+        }
         return stringBuilder.toString();
     }
 
     void clear() {
+        slice = null;
         stringBuilder.setLength(0);
     }
 }
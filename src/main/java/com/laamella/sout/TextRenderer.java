@@ -0,0 +1,57 @@
+package com.laamella.sout;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+final class TextRenderer extends Renderer {
+    final String text;
+    private final byte[] utf8Text;
+
+    TextRenderer(String text, LineStarts lineStarts, int offset) {
+        this(text, text.getBytes(UTF_8), lineStarts, offset);
+    }
+
+    /**
+     * @param utf8Text text, encoded as UTF-8.
+     */
+    TextRenderer(String text, byte[] utf8Text, LineStarts lineStarts, int offset) {
+        super(lineStarts, offset);
+        this.text = text;
+        this.utf8Text = utf8Text;
+    }
+
+    @Override
+    public void render(Object model, Scope scope, Writer outputWriter) {
+        try {
+            if (outputWriter instanceof Utf8Writer) {
+                ((Utf8Writer) outputWriter).writeEncoded(utf8Text);
+                return;
+            }
+            outputWriter.append(text);
+        } catch (IOException e) {
+            throw new SoutException(position(), e);
+        }
+    }
+
+    @Override
+    void renderInt(int model, Scope scope, Writer outputWriter) {
+        render(null, scope, outputWriter);
+    }
+
+    @Override
+    void renderLong(long model, Scope scope, Writer outputWriter) {
+        render(null, scope, outputWriter);
+    }
+
+    @Override
+    void renderDouble(double model, Scope scope, Writer outputWriter) {
+        render(null, scope, outputWriter);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
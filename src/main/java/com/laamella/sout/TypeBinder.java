@@ -0,0 +1,249 @@
+package com.laamella.sout;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Binds the names in a template to the fields and methods of the type of the model it will be rendered with.
+ * Every name is looked up once, here, and a name that doesn't exist is reported here instead of while rendering.
+ * <p>
+ * Binding follows the declared types through the template:
+ * the values of names, the elements of collections, arrays and streams, and the type arguments of generic classes.
+ * It stops where the type can't be known, and the names below that point are resolved while rendering, as usual:
+ * <ul>
+ * <li>on maps, functions, Object, and type variables that aren't bound,</li>
+ * <li>on interfaces, for names the interface doesn't declare, since an implementation may have them,</li>
+ * <li>inside nestings when there is a custom type renderer or custom iterator factory, since they may render the parts on anything,</li>
+ * <li>inside included partials, since they are shared with templates for other types, and can be replaced,</li>
+ * <li>everywhere when there is a custom name renderer, since it may render any name.</li>
+ * </ul>
+ * A name is also resolved as usual when the value it is rendered on turns out not to be of the type it was bound to,
+ * which can happen after an unchecked cast.
+ */
+final class TypeBinder {
+    private final SoutConfiguration configuration;
+
+    TypeBinder(SoutConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Bind the names in the tree that starts at renderer, which will be rendered on models of modelType.
+     *
+     * @throws SoutException when a name doesn't exist on the type it will be resolved on.
+     */
+    void bind(Renderer renderer, Type modelType) {
+        if (configuration.customNameRenderer == null) {
+            bind(renderer, ModelType.of(modelType, Map.of()));
+        }
+    }
+
+    private void bind(Renderable renderable, ModelType type) {
+        if (type == null) {
+            return;
+        }
+        if (renderable instanceof ContainerRenderer) {
+            for (var child : ((ContainerRenderer) renderable).children) {
+                bind(child, type);
+            }
+        } else if (renderable instanceof NameRenderer) {
+            var nameRenderer = (NameRenderer) renderable;
+            bindPath(nameRenderer.path, type, nameRenderer);
+        } else if (renderable instanceof NestedRenderer) {
+            var nestedRenderer = (NestedRenderer) renderable;
+            var valueType = bindPath(nestedRenderer.path, type, nestedRenderer);
+            if (valueType != null && configuration.customTypeRenderer == null) {
+                bindParts(nestedRenderer.parts, type, valueType);
+            }
+        }
+    }
+
+    /**
+     * Bind the parts of a nesting the way {@link NestedRenderer} will render them:
+     * on the parent model for booleans, on the elements for collections, or on the value itself.
+     */
+    private void bindParts(Renderable[] parts, ModelType parentType, ModelType valueType) {
+        if (valueType.raw == Boolean.class) {
+            for (var part : parts) {
+                bind(part, parentType);
+            }
+            return;
+        }
+        if (configuration.customIteratorFactory != null) {
+            return;
+        }
+        if (valueType.isCollection()) {
+            var elementType = valueType.elementType();
+            if (parts.length == 1 || parts.length == 2) {
+                for (var part : parts) {
+                    bind(part, elementType);
+                }
+            } else if (parts.length == 4) {
+                bind(parts[0], parentType);
+                bind(parts[1], elementType);
+                bind(parts[2], elementType);
+                bind(parts[3], parentType);
+            }
+            return;
+        }
+        if (parts.length == 1) {
+            bind(parts[0], valueType);
+        }
+    }
+
+    /**
+     * Bind every segment of path, starting on type, until the type can't be known anymore.
+     *
+     * @return the type of the value of path, or null if it can't be known.
+     */
+    private static ModelType bindPath(NamePath path, ModelType type, Renderer node) {
+        for (var segment : path.segments) {
+            if (type == null || !type.hasFixedNames()) {
+                return null;
+            }
+            var accessor = NameResolver.findAccessor(type.raw, segment.name);
+            if (accessor == NameResolver.Accessor.NONE) {
+                if (type.raw.isInterface()) {
+                    // An implementation may have it.
+                    return null;
+                }
+                throw new SoutException(node.position(), "%s not found on %s.", segment.name, type.raw.getName());
+            }
+            segment.boundAccessor = accessor;
+            type = type.member(accessor.type);
+        }
+        return type;
+    }
+
+    /**
+     * A type from the model, with the type arguments that are known for it and its supertypes.
+     */
+    private static final class ModelType {
+        final Class<?> raw;
+        /**
+         * The type arguments of raw. Those of its supertypes are added when they are first needed.
+         */
+        private final Map<TypeVariable<?>, ModelType> variables;
+        private final ModelType componentType;
+        private boolean supertypesAdded = false;
+
+        private ModelType(Class<?> raw, Map<TypeVariable<?>, ModelType> variables, ModelType componentType) {
+            // Values are boxed before names are resolved on them.
+            this.raw = MethodType.methodType(raw).wrap().returnType();
+            this.variables = variables;
+            this.componentType = componentType;
+        }
+
+        /**
+         * @param context the types of the type variables that type may use.
+         * @return type as a ModelType, or null if it can't be known.
+         */
+        static ModelType of(Type type, Map<TypeVariable<?>, ModelType> context) {
+            if (type instanceof Class) {
+                var c = (Class<?>) type;
+                return new ModelType(c, new HashMap<>(), c.isArray() ? of(c.getComponentType(), Map.of()) : null);
+            } else if (type instanceof ParameterizedType) {
+                var parameterizedType = (ParameterizedType) type;
+                var raw = (Class<?>) parameterizedType.getRawType();
+                var parameters = raw.getTypeParameters();
+                var arguments = parameterizedType.getActualTypeArguments();
+                var variables = new HashMap<TypeVariable<?>, ModelType>();
+                for (int i = 0; i < parameters.length; i++) {
+                    variables.put(parameters[i], of(arguments[i], context));
+                }
+                return new ModelType(raw, variables, null);
+            } else if (type instanceof GenericArrayType) {
+                var componentType = of(((GenericArrayType) type).getGenericComponentType(), context);
+                return new ModelType(Object[].class, new HashMap<>(), componentType);
+            } else if (type instanceof TypeVariable) {
+                return context.get(type);
+            } else if (type instanceof WildcardType) {
+                var upperBounds = ((WildcardType) type).getUpperBounds();
+                return upperBounds.length == 1 ? of(upperBounds[0], context) : null;
+            }
+            return null;
+        }
+
+        /**
+         * @return the type of a field or method of this type, declared as memberType.
+         */
+        ModelType member(Type memberType) {
+            return of(memberType, variables());
+        }
+
+        /**
+         * @return whether the names on values of this type are the fields and methods of the type.
+         */
+        boolean hasFixedNames() {
+            return raw != Object.class && !Map.class.isAssignableFrom(raw) && !Function.class.isAssignableFrom(raw);
+        }
+
+        /**
+         * @return whether the standard iterator factory loops over values of this type.
+         */
+        boolean isCollection() {
+            return raw.isArray() || Iterable.class.isAssignableFrom(raw) || Iterator.class.isAssignableFrom(raw) || Stream.class.isAssignableFrom(raw);
+        }
+
+        /**
+         * @return the type of the elements of this collection, or null if it can't be known.
+         */
+        ModelType elementType() {
+            if (raw.isArray()) {
+                return componentType;
+            }
+            var variables = variables();
+            for (var collectionType : new Class<?>[]{Iterable.class, Iterator.class, Stream.class}) {
+                var elementType = variables.get(collectionType.getTypeParameters()[0]);
+                if (elementType != null) {
+                    return elementType;
+                }
+            }
+            return null;
+        }
+
+        private Map<TypeVariable<?>, ModelType> variables() {
+            if (!supertypesAdded) {
+                supertypesAdded = true;
+                addSupertypes(raw);
+            }
+            return variables;
+        }
+
+        /**
+         * Add the type arguments that type passes on to its supertypes, and so on.
+         */
+        private void addSupertypes(Class<?> type) {
+            var supertypes = new ArrayList<Type>();
+            supertypes.add(type.getGenericSuperclass());
+            supertypes.addAll(Arrays.asList(type.getGenericInterfaces()));
+            for (var supertype : supertypes) {
+                if (supertype instanceof ParameterizedType) {
+                    var parameterizedType = (ParameterizedType) supertype;
+                    var superRaw = (Class<?>) parameterizedType.getRawType();
+                    var parameters = superRaw.getTypeParameters();
+                    var arguments = parameterizedType.getActualTypeArguments();
+                    for (int i = 0; i < parameters.length; i++) {
+                        if (!variables.containsKey(parameters[i])) {
+                            variables.put(parameters[i], of(arguments[i], variables));
+                        }
+                    }
+                    addSupertypes(superRaw);
+                } else if (supertype instanceof Class) {
+                    addSupertypes((Class<?>) supertype);
+                }
+            }
+        }
+    }
+}
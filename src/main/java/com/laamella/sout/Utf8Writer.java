@@ -0,0 +1,172 @@
+package com.laamella.sout;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * A Writer that encodes to UTF-8 into a {@link ByteBuffer}, and optionally passes full buffers on to an {@link OutputStream}.
+ * Text that was already encoded, like the literal text of a template, can be written without encoding it again.
+ */
+final class Utf8Writer extends Writer {
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
+    private final ByteBuffer buffer;
+    private final OutputStream outputStream;
+    private char highSurrogate = 0;
+    /**
+     * How many bytes were passed on to the output stream.
+     */
+    long drainedBytes = 0;
+
+    /**
+     * Write to outputStream through an internal buffer.
+     */
+    Utf8Writer(OutputStream outputStream) {
+        this.outputStream = outputStream;
+        this.buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+    }
+
+    /**
+     * Write directly into buffer. When it is full, writing fails.
+     */
+    Utf8Writer(ByteBuffer buffer) {
+        this.outputStream = null;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Write bytes that are already encoded in UTF-8.
+     */
+    void writeEncoded(byte[] bytes) throws IOException {
+        flushDanglingSurrogate();
+        if (buffer.remaining() < bytes.length) {
+            drain();
+            if (outputStream != null && bytes.length > buffer.capacity()) {
+                outputStream.write(bytes);
+                drainedBytes += bytes.length;
+                return;
+            }
+            requireSpace(bytes.length);
+        }
+        buffer.put(bytes);
+    }
+
+    /**
+     * Write characters that are known to be ASCII, like digits, from start to end.
+     */
+    void writeAscii(char[] chars, int start, int end) throws IOException {
+        flushDanglingSurrogate();
+        requireSpace(end - start);
+        for (int i = start; i < end; i++) {
+            buffer.put((byte) chars[i]);
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        encode((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            encode(chars[i]);
+        }
+    }
+
+    @Override
+    public void write(String string, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            encode(string.charAt(i));
+        }
+    }
+
+    private void encode(char c) throws IOException {
+        if (highSurrogate != 0) {
+            var high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                requireSpace(4);
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                return;
+            }
+            putReplacement();
+        }
+        if (c < 0x80) {
+            requireSpace(1);
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            requireSpace(2);
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            putReplacement();
+        } else {
+            requireSpace(3);
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+
+    private void flushDanglingSurrogate() throws IOException {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            putReplacement();
+        }
+    }
+
+    private void putReplacement() throws IOException {
+        requireSpace(1);
+        buffer.put((byte) '?');
+    }
+
+    private void requireSpace(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+            if (buffer.remaining() < bytes) {
+                throw new IOException("Output buffer is full.");
+            }
+        }
+    }
+
+    /**
+     * Pass the buffered bytes on to the output stream, if there is one.
+     */
+    void drain() throws IOException {
+        if (outputStream != null) {
+            outputStream.write(buffer.array(), 0, buffer.position());
+            drainedBytes += buffer.position();
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Write everything that is pending, including a dangling high surrogate.
+     */
+    void finish() throws IOException {
+        flushDanglingSurrogate();
+        drain();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        finish();
+        if (outputStream != null) {
+            outputStream.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,17 @@
+package com.laamella.sout;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * A way of writing the values of one name, as set up with {@link SoutConfiguration#setDecimals(String, int)}
+ * or {@link SoutConfiguration#setDateTimeFormat(String, DateTimeFormatter)}.
+ * Formats hold no state while writing, so one instance serves all templates and threads.
+ */
+abstract class ValueFormat {
+    /**
+     * @return false if value is of a type that this format doesn't handle.
+     */
+    abstract boolean write(Object value, Writer outputWriter) throws IOException;
+}
@@ -0,0 +1,76 @@
+package com.laamella.sout;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * Writes values to the output the way {@link Object#toString()} would,
+ * but writes numbers straight into the output instead of making a String for them first.
+ */
+final class ValueWriter {
+    /**
+     * Enough room for the digits and sign of any long.
+     */
+    private static final ThreadLocal<char[]> digitBuffer = ThreadLocal.withInitial(() -> new char[20]);
+
+    private ValueWriter() {
+    }
+
+    static void writeValue(Object value, Writer outputWriter) throws IOException {
+        if (value instanceof String) {
+            outputWriter.write((String) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number) value).longValue(), outputWriter);
+        } else if (value instanceof Double) {
+            writeDouble((Double) value, outputWriter);
+        } else {
+            outputWriter.write(value.toString());
+        }
+    }
+
+    static void writeLong(long value, Writer outputWriter) throws IOException {
+        if (outputWriter instanceof StringBuilderWriter) {
+            ((StringBuilderWriter) outputWriter).stringBuilder.append(value);
+        } else if (outputWriter instanceof StringWriter) {
+            ((StringWriter) outputWriter).getBuffer().append(value);
+        } else if (outputWriter instanceof Utf8Writer) {
+            var digits = digitBuffer.get();
+            int start = toDigits(value, digits);
+            ((Utf8Writer) outputWriter).writeAscii(digits, start, digits.length);
+        } else {
+            var digits = digitBuffer.get();
+            int start = toDigits(value, digits);
+            outputWriter.write(digits, start, digits.length - start);
+        }
+    }
+
+    static void writeDouble(double value, Writer outputWriter) throws IOException {
+        if (outputWriter instanceof StringBuilderWriter) {
+            ((StringBuilderWriter) outputWriter).stringBuilder.append(value);
+        } else if (outputWriter instanceof StringWriter) {
+            ((StringWriter) outputWriter).getBuffer().append(value);
+        } else {
+            outputWriter.write(Double.toString(value));
+        }
+    }
+
+    /**
+     * Write value to the end of digits.
+     *
+     * @return the index of the first character written.
+     */
+    static int toDigits(long value, char[] digits) {
+        int i = digits.length;
+        // Work with negative numbers, so that Long.MIN_VALUE needs no special case.
+        long negative = value < 0 ? value : -value;
+        do {
+            digits[--i] = (char) ('0' - negative % 10);
+            negative /= 10;
+        } while (negative != 0);
+        if (value < 0) {
+            digits[--i] = '-';
+        }
+        return i;
+    }
+}
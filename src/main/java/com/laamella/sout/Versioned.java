@@ -0,0 +1,13 @@
+package com.laamella.sout;
+
+/**
+ * A model object that is changed in place, and tells when it has changed.
+ * {@link IncrementalRenderer} compares model objects by identity, so it would miss changes to objects like these
+ * unless they implement this interface.
+ */
+public interface Versioned {
+    /**
+     * @return a number that changes whenever anything that can be rendered from this object changes.
+     */
+    long getVersion();
+}
@@ -1,3 +1,5 @@
 module sout {
+    requires jdk.jfr;
+    requires static java.compiler;
     exports com.laamella.sout;
-}
\ No newline at end of file
+}
@@ -0,0 +1,136 @@
+package com.laamella.sout;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that rendering a template that was rendered before allocates (next to) nothing,
+ * by counting the bytes the thread allocates over many renders.
+ * This keeps garbage out of the render path: when one of these fails, something started allocating per render.
+ */
+public class AllocationTest {
+    /**
+     * The allocation that is allowed per render, in bytes. It leaves room for the measuring itself, nothing more.
+     */
+    private static final long BUDGET_PER_RENDER = 8;
+    private static final int RENDERS_PER_ROUND = 20_000;
+    private static final int MAX_WARM_UP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private final SoutConfiguration configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+
+    public static class Item {
+        final String name;
+        private final int count;
+        final long weight;
+        final double price;
+
+        Item(String name, int count) {
+            this.name = name;
+            this.count = count;
+            this.weight = count * 1_000_000_000L;
+            this.price = count + 0.25;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public boolean isAvailable() {
+            return count > 0;
+        }
+    }
+
+    @Test
+    public void renderingMapsAllocatesNothing() {
+        var items = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 10; i++) {
+            var item = new HashMap<String, Object>();
+            item.put("name", "item " + i);
+            // Outside of the cache of boxed integers, so boxing would show.
+            item.put("count", 1000 + i);
+            items.add(item);
+        }
+        var model = new HashMap<String, Object>();
+        model.put("title", "Items");
+        model.put("items", items);
+        model.put("open", true);
+
+        assertAllocationFree("{title}: {items|<{name} {count}>|, }{open| (open)}", model);
+    }
+
+    @Test
+    public void renderingObjectsAllocatesNothing() {
+        var items = new ArrayList<Item>();
+        for (int i = 0; i < 10; i++) {
+            items.add(new Item("item " + i, 1000 + i));
+        }
+
+        assertAllocationFree("{items|<{name} {count} {weight} {price}{available|!|?}>|, }", Map.of("items", items));
+    }
+
+    @Test
+    public void renderingArraysAllocatesNothing() {
+        assertAllocationFree("{numbers|{}|, } {names|{}|, }", Map.of(
+                "numbers", new int[]{-1000, 22, 333, 4444, 55555},
+                "names", new String[]{"a", "b", "c"}));
+    }
+
+    /**
+     * Render until the JIT has done its work, and check that the renders after that stay within the budget.
+     * Until the render path is compiled, the interpreter may allocate, so the warm-up lasts until a round is within budget.
+     * After that, all renders of the measured rounds together have to stay within budget,
+     * so that something that only allocates now and then is noticed too.
+     */
+    private void assertAllocationFree(String text, Object model) {
+        var template = new SoutTemplate(text, configuration);
+        var output = new StringBuilderWriter(new StringBuilder());
+        template.render(model, output);
+        var expected = output.toString();
+
+        long bytesPerRender = Long.MAX_VALUE;
+        for (int round = 0; round < MAX_WARM_UP_ROUNDS && bytesPerRender > BUDGET_PER_RENDER; round++) {
+            bytesPerRender = measureRound(template, model, output);
+        }
+        long totalBytesPerRender = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            totalBytesPerRender += measureRound(template, model, output);
+        }
+
+        assertEquals(expected, output.toString());
+        assertThat(totalBytesPerRender / MEASURED_ROUNDS).as("bytes allocated per render").isLessThanOrEqualTo(BUDGET_PER_RENDER);
+    }
+
+    /**
+     * @return the bytes allocated per render, over a round of renders.
+     */
+    private static long measureRound(SoutTemplate template, Object model, StringBuilderWriter output) {
+        long before = allocatedBytes();
+        for (int i = 0; i < RENDERS_PER_ROUND; i++) {
+            output.stringBuilder.setLength(0);
+            template.render(model, output);
+        }
+        return (allocatedBytes() - before) / RENDERS_PER_ROUND;
+    }
+
+    /**
+     * @return the amount of bytes the current thread has allocated so far.
+     * The management API is called reflectively, because sout doesn't require its module.
+     */
+    private static long allocatedBytes() {
+        try {
+            Object threadMXBean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+            Method getAllocatedBytes = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+            return (long) getAllocatedBytes.invoke(threadMXBean, Thread.currentThread().getId());
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.laamella.sout;
 import com.google.common.collect.ImmutableMap;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringWriter;
 import java.util.function.Function;
 
 import static java.lang.Boolean.TRUE;
@@ -10,7 +11,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 public class NameResolverTest {
 
-    private final NameResolver nameResolver = new NameResolver();
+    private final NameResolver nameResolver = new NameResolver(null);
 
     @Test
     public void findValueOfMapEntry() {
@@ -58,4 +59,71 @@ public class NameResolverTest {
         assertThat(value.value).isEqualTo(15);
     }
 
+    @Test
+    public void findValueOfFieldInSuperclass() {
+        var testModel = new TestModel() {
+        };
+        var value = nameResolver.resolveComplexNameOnModel(testModel, "field");
+        assertThat(value.failed).isFalse();
+        assertThat(value.value).isEqualTo("*field*");
+    }
+
+    @Test
+    public void missingNamesFailEveryTime() {
+        var testModel = new TestModel();
+        for (int i = 0; i < 2; i++) {
+            var value = nameResolver.resolveComplexNameOnModel(testModel, "doesNotExist");
+            assertThat(value.failed).isTrue();
+        }
+        assertThat(NameResolver.findAccessor(TestModel.class, "doesNotExist")).isSameAs(NameResolver.Accessor.NONE);
+    }
+
+    @Test
+    public void accessorsAreLookedUpOnce() {
+        assertThat(NameResolver.findAccessor(TestModel.class, "getter"))
+                .isSameAs(NameResolver.findAccessor(TestModel.class, "getter"));
+    }
+
+    @Test
+    public void namePathResolvesOnDifferentClasses() {
+        var path = new NamePath("recurser.value");
+        var onTestModel = nameResolver.resolvePathOnModel(new TestModel(), path);
+        var onMap = nameResolver.resolvePathOnModel(ImmutableMap.of("recurser", ImmutableMap.of("value", 5)), path);
+        var onRecurser = nameResolver.resolvePathOnModel(new TestModel.Recurser(0, new TestModel.Recurser(7)), path);
+        assertThat(onTestModel.value).isEqualTo(1);
+        assertThat(onMap.value).isEqualTo(5);
+        assertThat(onRecurser.value).isEqualTo(7);
+    }
+
+    static class ThrowingGetter {
+        int getCount() {
+            throw new IllegalStateException("not counted yet");
+        }
+
+        int count() {
+            return 3;
+        }
+
+        String getBroken() {
+            throw new IllegalStateException("broken");
+        }
+    }
+
+    @Test
+    public void aThrowingGetterFallsThroughToTheNextStrategy() throws Exception {
+        var value = nameResolver.resolveComplexNameOnModel(new ThrowingGetter(), "count");
+        assertThat(value.failed).isFalse();
+        assertThat(value.value).isEqualTo(3);
+
+        var output = new StringWriter();
+        var written = nameResolver.resolveOrWritePrimitive(new ThrowingGetter(), new NamePath("count"), output);
+        assertThat(written).isEqualTo(3);
+    }
+
+    @Test
+    public void aThrowingGetterFailsWhenNothingComesAfterIt() {
+        var value = nameResolver.resolveComplexNameOnModel(new ThrowingGetter(), "broken");
+        assertThat(value.failed).isTrue();
+        assertThat(value.message).contains("broken");
+    }
 }
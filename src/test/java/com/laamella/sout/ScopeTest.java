@@ -0,0 +1,67 @@
+package com.laamella.sout;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ScopeTest {
+    private final Scope global = new Scope(null);
+
+    @Test
+    public void variablesAreDefinedWhereTheyAreFirstAskedFor() {
+        var nested = global.enter();
+        assertThat(nested.<Integer>getVariable("x", 1)).isEqualTo(1);
+        assertThat(global.<Integer>getVariable("x", 2)).isEqualTo(2);
+        assertThat(nested.<Integer>getVariable("x", 3)).isEqualTo(1);
+    }
+
+    @Test
+    public void updatesGoToTheScopeWhereTheVariableIsDefined() {
+        global.setVariable("x", 1);
+        var nested = global.enter().enter();
+        nested.updateVariable("x", 5);
+        assertThat(global.<Integer>getVariable("x", 0)).isEqualTo(5);
+        assertThat(nested.getGlobalScope()).isSameAs(global);
+    }
+
+    @Test
+    public void updatingAnUndefinedVariableFails() {
+        assertThatThrownBy(() -> global.updateVariable("x", 5))
+                .isInstanceOf(SoutException.class)
+                .hasMessage("Variable x not found.");
+    }
+
+    @Test
+    public void copiesDontChangeTheOriginal() {
+        global.setVariable("x", 1);
+        var nested = global.enter();
+        nested.setVariable("y", 2);
+        var copy = nested.copy();
+        copy.updateVariable("x", 3);
+        copy.updateVariable("y", 4);
+        copy.setVariable("z", 5);
+        assertThat(global.<Integer>getVariable("x", 0)).isEqualTo(1);
+        assertThat(nested.<Integer>getVariable("y", 0)).isEqualTo(2);
+        assertThat(copy.getGlobalScope().<Integer>getVariable("x", 0)).isEqualTo(3);
+        assertThat(copy.<Integer>getVariable("y", 0)).isEqualTo(4);
+    }
+
+    @Test
+    public void nestedScopesAreReusedEmpty() {
+        var nested = global.enter();
+        nested.setVariable("x", 1);
+        nested.exit();
+        var reused = global.enter();
+        assertThat(reused).isSameAs(nested);
+        assertThat(reused.<Integer>getVariable("x", 2)).isEqualTo(2);
+    }
+
+    @Test
+    public void busyNestedScopesAreNotReused() {
+        var nested = global.enter();
+        var other = global.enter();
+        assertThat(other).isNotSameAs(nested);
+        assertThat(other.getParentScope()).isSameAs(global);
+    }
+}
@@ -0,0 +1,103 @@
+package com.laamella.sout;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SoutCompilerTest {
+    private final SoutConfiguration configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void compiledTemplateRendersLikeTheInterpretedOne() throws Exception {
+        var template = "Hello \"{name}\",\n{friends|<ul>|<li>{name}</li>|\n|</ul>}{|{empty|x}}{vip|VIP|regular} \\{ü\\}: {address|{street} {number}}";
+        var data = ImmutableMap.of(
+                "name", "Piet",
+                "friends", ImmutableList.of(ImmutableMap.of("name", "Hans"), ImmutableMap.of("name", "Henk")),
+                "empty", ImmutableList.of(),
+                "vip", false,
+                "address", ImmutableMap.of("street", "Dorpsstraat", "number", 12));
+
+        var compiled = compile(template);
+
+        var expected = new StringWriter();
+        new SoutTemplate(template, configuration).render(data, expected);
+        assertEquals(expected.toString(), compiled.render(data));
+    }
+
+    @Test
+    public void bigTemplatesAreSplitOverMethods() throws Exception {
+        var template = IntStream.range(0, 1000).mapToObj(i -> "{a} " + "x".repeat(i % 50)).collect(Collectors.joining());
+        var data = ImmutableMap.of("a", 1);
+
+        var expected = new StringWriter();
+        new SoutTemplate(template, configuration).render(data, expected);
+        assertEquals(expected.toString(), compile(template).render(data));
+    }
+
+    @Test
+    public void hugeTemplatesStayWithinClassFileLimits() throws Exception {
+        var template = IntStream.range(0, 10_000).mapToObj(i -> "{a" + i % 100 + "} " + "y".repeat(i % 7) + "\n").collect(Collectors.joining());
+        var data = IntStream.range(0, 100).boxed().collect(Collectors.toMap(i -> "a" + i, i -> i));
+
+        var expected = new StringWriter();
+        new SoutTemplate(template, configuration).render(data, expected);
+        assertEquals(expected.toString(), compile(template).render(data));
+    }
+
+    @Test
+    public void errorsAreTheSameAsForTheInterpretedTemplate() throws Exception {
+        var template = "abc\n  {a|x|y|z}";
+        var compiled = compile(template);
+        var interpreted = new SoutTemplate(template, configuration);
+        for (var data : ImmutableList.of(ImmutableMap.of("a", true), ImmutableMap.of("a", ImmutableList.of(1)), ImmutableMap.of())) {
+            assertThatThrownBy(() -> compiled.render(data))
+                    .isInstanceOf(SoutException.class)
+                    .hasMessage(messageOf(() -> interpreted.render(data, new StringWriter())));
+        }
+    }
+
+    private static String messageOf(Runnable action) {
+        try {
+            action.run();
+            throw new AssertionError("No exception.");
+        } catch (SoutException e) {
+            return e.getMessage();
+        }
+    }
+
+    private CompiledTemplate compile(String template) throws Exception {
+        var source = new SoutCompiler(configuration).compile(template, "generated", "Template");
+        var sourceFile = directory.resolve("generated/Template.java");
+        Files.createDirectories(sourceFile.getParent());
+        Files.writeString(sourceFile, source, UTF_8);
+        var classPath = Stream.of(System.getProperty("java.class.path"), System.getProperty("jdk.module.path"))
+                .filter(path -> path != null && !path.isEmpty())
+                .collect(Collectors.joining(File.pathSeparator));
+        var javac = Path.of(System.getProperty("java.home"), "bin", "javac").toString();
+        var process = new ProcessBuilder(javac, "-classpath", classPath, "-d", directory.toString(), sourceFile.toString())
+                .redirectErrorStream(true)
+                .start();
+        var output = new String(process.getInputStream().readAllBytes(), UTF_8);
+        assertEquals(0, process.waitFor(), output + source);
+        var classLoader = new URLClassLoader(new URL[]{directory.toUri().toURL()}, getClass().getClassLoader());
+        return (CompiledTemplate) classLoader.loadClass("generated.Template").getDeclaredConstructor().newInstance();
+    }
+}
@@ -0,0 +1,59 @@
+package com.laamella.sout;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SoutTemplateParserTest {
+    private final SoutTemplateParser parser = new SoutTemplateParser('{', '|', '}', '\\',
+            new CollectionRenderer(new IteratorFactory(null), 0, null), null, null, Map.of(), Map.of(), name -> null, null, null);
+
+    @Test
+    public void textOnlyTemplateBecomesASingleTextRenderer() {
+        var root = parser.parseTemplate("Hello \\{world\\}");
+        assertThat(root).isInstanceOf(TextRenderer.class);
+        assertThat(((TextRenderer) root).text).isEqualTo("Hello {world}");
+    }
+
+    @Test
+    public void staticPartsBecomeTextRenderers() {
+        var root = parser.parseTemplate("{list|{}|, }");
+        assertThat(root).isInstanceOf(NestedRenderer.class);
+        var parts = ((NestedRenderer) root).parts;
+        assertThat(parts[0]).isInstanceOf(NameRenderer.class);
+        assertThat(parts[1]).isInstanceOf(TextRenderer.class);
+        assertThat(root.toString()).isEqualTo("❰list❚❰❱❚, ❱");
+    }
+
+    @Test
+    public void adjacentTextIsMerged() {
+        var lineStarts = new LineStarts();
+        var folded = SoutTemplateParser.fold(lineStarts, 0, List.of(
+                new TextRenderer("a", lineStarts, 0),
+                new TextRenderer("", lineStarts, 1),
+                new TextRenderer("b", lineStarts, 1)));
+        assertThat(folded).isInstanceOf(TextRenderer.class);
+        assertThat(((TextRenderer) folded).text).isEqualTo("ab");
+    }
+
+    @Test
+    public void emptyTemplateBecomesEmptyText() {
+        var root = parser.parseTemplate("");
+        assertThat(root).isInstanceOf(TextRenderer.class);
+        assertThat(((TextRenderer) root).text).isEmpty();
+    }
+
+    @Test
+    public void delimitersAndLinesAreFoundInLongText() {
+        var text = "line\n".repeat(1000);
+        var root = parser.parseTemplate(text + "a\\|b\\{c\n{name}" + text);
+        assertThat(root).isInstanceOf(ContainerRenderer.class);
+        var children = ((ContainerRenderer) root).children;
+        assertThat(((TextRenderer) children[0]).text).isEqualTo(text + "a|b{c\n");
+        assertThat(((TextRenderer) children[2]).text).isEqualTo(text);
+        assertThat(children[2].position()).isEqualTo(new Position(6, 1002));
+    }
+}
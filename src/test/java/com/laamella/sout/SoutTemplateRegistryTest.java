@@ -0,0 +1,237 @@
+package com.laamella.sout;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SoutTemplateRegistryTest {
+    private final SoutConfiguration configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void templatesAreParsedOnce() throws IOException {
+        Files.writeString(directory.resolve("hello.sout"), "Hello {name}");
+        try (var registry = new SoutTemplateRegistry(directory, configuration, 10, 1000)) {
+            var template = registry.get("hello.sout");
+            assertThat(registry.get("hello.sout")).isSameAs(template);
+            assertThat(render(template)).isEqualTo("Hello Piet");
+            assertThat(registry.getMisses()).isEqualTo(1);
+            assertThat(registry.getHits()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedTemplatesAreEvicted() throws IOException {
+        Files.writeString(directory.resolve("a.sout"), "a");
+        Files.writeString(directory.resolve("b.sout"), "b");
+        Files.writeString(directory.resolve("c.sout"), "c");
+        try (var registry = new SoutTemplateRegistry(directory, configuration, 2, 1000)) {
+            var a = registry.get("a.sout");
+            registry.get("b.sout");
+            registry.get("a.sout");
+            registry.get("c.sout");
+            assertThat(registry.getEvictions()).isEqualTo(1);
+            // b was evicted, a was not.
+            assertThat(registry.get("a.sout")).isSameAs(a);
+            registry.get("b.sout");
+            assertThat(registry.getMisses()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    public void templatesAreEvictedWhenTheyGetTooBig() throws IOException {
+        Files.writeString(directory.resolve("a.sout"), "aaaaa");
+        Files.writeString(directory.resolve("b.sout"), "bbbbb");
+        try (var registry = new SoutTemplateRegistry(directory, configuration, 10, 8)) {
+            registry.get("a.sout");
+            registry.get("b.sout");
+            assertThat(registry.getEvictions()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void changedTemplatesAreReloaded() throws IOException, InterruptedException {
+        var file = directory.resolve("hello.sout");
+        Files.writeString(file, "Hello {name}");
+        try (var registry = new SoutTemplateRegistry(directory, configuration, 10, 1000)) {
+            registry.get("hello.sout");
+            Files.writeString(file, "Bye {name}");
+            // The watcher may see the file while it is being written, so wait for the final version.
+            for (int i = 0; i < 300 && !render(registry.get("hello.sout")).equals("Bye Piet"); i++) {
+                Thread.sleep(100);
+            }
+            assertThat(render(registry.get("hello.sout"))).isEqualTo("Bye Piet");
+            assertThat(registry.getReloads()).isGreaterThanOrEqualTo(1);
+        }
+    }
+
+    @Test
+    public void templatesOutsideTheDirectoryAreNotFound() throws IOException {
+        var templateDirectory = Files.createDirectory(directory.resolve("templates"));
+        Files.writeString(directory.resolve("secret.sout"), "secret");
+        try (var registry = new SoutTemplateRegistry(templateDirectory, configuration, 10, 1000)) {
+            assertThatThrownBy(() -> registry.get("../secret.sout"))
+                    .isInstanceOf(SoutException.class)
+                    .hasMessageContaining("not found");
+        }
+    }
+
+    @Test
+    public void linksToFilesOutsideTheDirectoryAreNotFollowed() throws IOException {
+        var templateDirectory = Files.createDirectory(directory.resolve("templates"));
+        var secret = Files.writeString(directory.resolve("secret.sout"), "secret");
+        Files.createSymbolicLink(templateDirectory.resolve("link.sout"), secret);
+        try (var registry = new SoutTemplateRegistry(templateDirectory, configuration, 10, 1000)) {
+            assertThatThrownBy(() -> registry.get("link.sout"))
+                    .isInstanceOf(SoutException.class)
+                    .hasMessageContaining("not found");
+        }
+    }
+
+    @Test
+    public void concurrentMissesParseOnce() throws Exception {
+        Files.writeString(directory.resolve("hello.sout"), "Hello {name}");
+        var pool = Executors.newFixedThreadPool(8);
+        try (var registry = new SoutTemplateRegistry(directory, configuration, 10, 1000)) {
+            var start = new CountDownLatch(1);
+            var gets = new ArrayList<Future<SoutTemplate>>();
+            for (int i = 0; i < 8; i++) {
+                gets.add(pool.submit(() -> {
+                    start.await();
+                    return registry.get("hello.sout");
+                }));
+            }
+            start.countDown();
+            for (var get : gets) {
+                assertThat(get.get()).isSameAs(gets.get(0).get());
+            }
+            assertThat(registry.getMisses()).isEqualTo(1);
+            assertThat(registry.getHits()).isEqualTo(7);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void differentTemplatesLoadAtTheSameTime() throws Exception {
+        var slowLoadStarted = new CountDownLatch(1);
+        var slowLoadMayFinish = new CountDownLatch(1);
+        var classLoader = new ClassLoader(null) {
+            @Override
+            public InputStream getResourceAsStream(String name) {
+                if (name.equals("templates/slow.sout")) {
+                    slowLoadStarted.countDown();
+                    try {
+                        slowLoadMayFinish.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return new ByteArrayInputStream(name.getBytes(UTF_8));
+            }
+        };
+        var pool = Executors.newSingleThreadExecutor();
+        try (var registry = new SoutTemplateRegistry(classLoader, "templates", configuration, 10, 1000)) {
+            var slow = pool.submit(() -> registry.get("slow.sout"));
+            assertThat(slowLoadStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(render(registry.get("fast.sout"))).isEqualTo("templates/fast.sout");
+            assertThat(slow.isDone()).isFalse();
+            slowLoadMayFinish.countDown();
+            assertThat(render(slow.get())).isEqualTo("templates/slow.sout");
+        } finally {
+            slowLoadMayFinish.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void includedTemplatesAreForgottenWhenNothingIncludesThemAnymore() throws IOException, InterruptedException {
+        Files.writeString(directory.resolve("header.sout"), "Dear {name},");
+        Files.writeString(directory.resolve("a.sout"), "{@header.sout} a");
+        Files.writeString(directory.resolve("b.sout"), "b");
+        try (var registry = new SoutTemplateRegistry(directory, configuration, 1, 1000)) {
+            assertThat(render(registry.get("a.sout"))).isEqualTo("Dear Piet, a");
+            registry.get("b.sout");
+            var header = registry.partials.get("header.sout");
+            for (int i = 0; i < 100 && header.get() != null; i++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            assertThat(header.get()).isNull();
+        }
+    }
+
+    @Test
+    public void templatesCanBeLoadedFromTheClassPath() {
+        try (var registry = new SoutTemplateRegistry(getClass().getClassLoader(), "/templates/", configuration, 10, 1000)) {
+            assertThat(registry.get("hello.sout")).isNotNull();
+            assertThatThrownBy(() -> registry.get("nope.sout"))
+                    .isInstanceOf(SoutException.class)
+                    .hasMessage("Template nope.sout not found in classpath root templates.");
+            assertThatThrownBy(() -> registry.get("../outside.sout"))
+                    .isInstanceOf(SoutException.class)
+                    .hasMessage("Template ../outside.sout not found in classpath root templates.");
+        }
+    }
+
+    @Test
+    public void includedTemplatesAreSharedAndReloaded() throws IOException, InterruptedException {
+        var header = Files.createDirectory(directory.resolve("mail")).resolve("header.sout");
+        Files.writeString(header, "Dear {name},");
+        Files.writeString(directory.resolve("a.sout"), "{@mail/header.sout} a");
+        Files.writeString(directory.resolve("b.sout"), "{@mail/header.sout} b");
+        try (var registry = new SoutTemplateRegistry(directory, configuration, 10, 1000)) {
+            var a = registry.get("a.sout");
+            var b = registry.get("b.sout");
+            assertThat(render(a)).isEqualTo("Dear Piet, a");
+            assertThat(((IncludeRenderer) ((ContainerRenderer) a.rootRenderer).children[0]).partial)
+                    .isSameAs(((IncludeRenderer) ((ContainerRenderer) b.rootRenderer).children[0]).partial);
+            assertThat(registry.getMisses()).isEqualTo(3);
+
+            Files.writeString(header, "Hi {name},");
+            for (int i = 0; i < 300 && !render(a).equals("Hi Piet, a"); i++) {
+                Thread.sleep(100);
+            }
+            assertThat(render(a)).isEqualTo("Hi Piet, a");
+            assertThat(render(b)).isEqualTo("Hi Piet, b");
+            assertThat(registry.get("a.sout")).isSameAs(a);
+        }
+    }
+
+    @Test
+    public void includeCyclesAreFound() throws IOException {
+        Files.writeString(directory.resolve("a.sout"), "{@b.sout}");
+        Files.writeString(directory.resolve("b.sout"), "{@a.sout}");
+        try (var registry = new SoutTemplateRegistry(directory, configuration, 10, 1000)) {
+            assertThatThrownBy(() -> registry.get("a.sout"))
+                    .isInstanceOf(SoutException.class)
+                    .hasMessage("Include cycle: a.sout → b.sout → a.sout.");
+        }
+    }
+
+    private String render(SoutTemplate template) {
+        var output = new StringWriter();
+        template.render(ImmutableMap.of("name", "Piet"), output);
+        return output.toString();
+    }
+}
@@ -2,12 +2,40 @@ package com.laamella.sout;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.reflect.TypeToken;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
-
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -173,6 +201,17 @@ public class SoutTemplateTest {
         assertRendered("123", selfTemplate, 123);
     }
 
+    @Test
+    public void renderPrimitiveArrays() {
+        var template = parse("{|[{}]|, }");
+        assertRendered("[1], [2], [3]", template, new int[]{1, 2, 3});
+        assertRendered("[10000000000], [-1]", template, new long[]{10000000000L, -1});
+        assertRendered("[1.5], [2.0]", template, new double[]{1.5, 2});
+        assertRendered("[true], [false]", template, new boolean[]{true, false});
+        assertRendered("[a], [b]", template, new char[]{'a', 'b'});
+        assertRendered("[x], [y]", template, new String[]{"x", "y"});
+    }
+
     @Test
     public void nullsAreNotAllowedInTheModel() {
         var selfTemplate = parse("{}");
@@ -217,6 +256,30 @@ public class SoutTemplateTest {
                 .hasMessage("1:8 Name abc was not closed before end of file.");
     }
 
+    @Test
+    public void positionsCountRows() {
+        assertThatThrownBy(() -> parse("line 1\nline 2 {abc"))
+                .isInstanceOf(SoutException.class)
+                .hasMessage("2:12 Name abc was not closed before end of file.");
+    }
+
+    @Test
+    public void parseFromCharSequence() {
+        var template = new SoutTemplate(new StringBuilder("Hello {}"), new SoutConfiguration('{', '|', '}', '\\', null, null, null));
+        assertRendered("Hello Piet", template, "Piet");
+    }
+
+    @Test
+    public void parseFromFile(@TempDir Path directory) throws IOException {
+        var file = Files.writeString(directory.resolve("hello.sout"), "Hëllo {}", UTF_8);
+        var template = new SoutTemplate(file, UTF_8, new SoutConfiguration('{', '|', '}', '\\', null, null, null));
+        assertRendered("Hëllo Piet", template, "Piet");
+
+        var broken = Files.write(directory.resolve("broken.sout"), new byte[]{'H', (byte) 0xc3, '{', '}'});
+        assertThatThrownBy(() -> new SoutTemplate(broken, UTF_8, new SoutConfiguration('{', '|', '}', '\\', null, null, null)))
+                .isInstanceOf(SoutException.class);
+    }
+
     @Test
     public void unexpectedOpenCharInName() {
         assertThatThrownBy(() -> parse("123{abc{def}}"))
@@ -268,6 +331,607 @@ public class SoutTemplateTest {
                 .hasMessage("1:1 Null value.");
     }
 
+    @Test
+    public void renderToOutputStream() {
+        var template = parse("Prijs: €{price} {smiley}");
+        var data = ImmutableMap.of("price", "14,55", "smiley", "\uD83D\uDE00 ünïcödé");
+        var output = new ByteArrayOutputStream();
+        template.render(data, output);
+        assertEquals("Prijs: €14,55 \uD83D\uDE00 ünïcödé", output.toString(UTF_8));
+    }
+
+    @Test
+    public void renderToByteBuffer() {
+        var template = parse("Prijs: €{price}");
+        var output = ByteBuffer.allocate(100);
+        template.render(ImmutableMap.of("price", "14,55"), output);
+        output.flip();
+        assertEquals("Prijs: €14,55", UTF_8.decode(output).toString());
+    }
+
+    @Test
+    public void renderToTooSmallByteBuffer() {
+        var template = parse("Prijs: €{price}");
+        assertThatThrownBy(() -> template.render(ImmutableMap.of("price", "14,55"), ByteBuffer.allocate(10)))
+                .isInstanceOf(SoutException.class)
+                .hasRootCauseMessage("Output buffer is full.");
+    }
+
+    @Test
+    public void parallelLoopsRenderInOrder() {
+        var pool = new ForkJoinPool(4);
+        try {
+            var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+            configuration.setParallelLoops(10, pool);
+            var template = parse("{numbers|[|{}|, |]}", configuration);
+            var numbers = IntStream.range(0, 1000).boxed().collect(toList());
+            var expected = numbers.stream().map(Object::toString).collect(joining(", ", "[", "]"));
+
+            assertRendered(expected, template, ImmutableMap.of("numbers", numbers));
+            assertRendered(expected, template, ImmutableMap.of("numbers", numbers.toArray()));
+            assertRendered("[1, 2]", template, ImmutableMap.of("numbers", ImmutableList.of(1, 2)));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void parallelLoopsDontShareTheScopesAroundThem() {
+        var pool = new ForkJoinPool(4);
+        try {
+            var configuration = new SoutConfiguration('{', '|', '}', '\\', (name, parts, model, scope, position, outputWriter) -> {
+                switch (name) {
+                    case "start" -> scope.getGlobalScope().setVariable("count", 0);
+                    case "count" -> scope.updateVariable("count", scope.<Integer>getVariable("count", 0) + 1);
+                    case "total" -> outputWriter.write(scope.getVariable("count", 0).toString());
+                    default -> {
+                        return false;
+                    }
+                }
+                return true;
+            }, null, null);
+            configuration.setParallelLoops(10, pool);
+            var template = parse("{start}{numbers|{count}}{total}", configuration);
+            var numbers = IntStream.range(0, 10_000).boxed().collect(toList());
+
+            assertRendered("0", template, ImmutableMap.of("numbers", numbers));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void numbersAreWrittenLikeToString() {
+        var template = parse("{a} {b} {c} {d}");
+        var data = ImmutableMap.of("a", 0, "b", -123, "c", Long.MIN_VALUE, "d", 2.5);
+        assertRendered("0 -123 -9223372036854775808 2.5", template, data);
+        var output = new ByteArrayOutputStream();
+        template.render(data, output);
+        assertEquals("0 -123 -9223372036854775808 2.5", output.toString(UTF_8));
+    }
+
+    @Test
+    public void fixedDecimals() {
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setDecimals("price", 2);
+        configuration.setDecimals("amount", 0);
+        var template = parse("{price} {amount}", configuration);
+        assertRendered("3.14 3", template, ImmutableMap.of("price", 3.14159, "amount", 2.5));
+        assertRendered("-0.05 -3", template, ImmutableMap.of("price", -0.049, "amount", -2.5));
+        assertRendered("0.00 12", template, ImmutableMap.of("price", -0.001, "amount", 12));
+        assertRendered("12.00 1e+300", template, ImmutableMap.of("price", 12L, "amount", "1e+300"));
+        assertRendered("2.35 123456789012345680000", template, ImmutableMap.of("price", new BigDecimal("2.345"), "amount", 123456789012345678901.0));
+        assertRendered("1.01 3", template, ImmutableMap.of("price", 1.005, "amount", 2.5000001));
+        assertRendered("2.68 -1", template, ImmutableMap.of("price", 2.675, "amount", -0.5));
+        assertRendered("1.00 0", template, ImmutableMap.of("price", 1.0049999999, "amount", 0.4999999999));
+    }
+
+    @Test
+    public void fixedDecimalsRoundTheSameForSmallAndBigDoubles() {
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setDecimals("", 2);
+        var template = parse("{}", configuration);
+        // Around 2^52 / 100, where rounding the scaled double stops being exact.
+        for (var base : new double[]{45035996273704.0, 4.5, 450.0}) {
+            for (int i = 0; i < 2000; i++) {
+                var value = base + i * 0.005;
+                var expected = BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).toPlainString();
+                assertRendered(expected, template, value);
+            }
+        }
+    }
+
+    @Test
+    public void dateTimeFormat() {
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setDateTimeFormat("day", DateTimeFormatter.ISO_LOCAL_DATE);
+        configuration.setDateTimeFormat("moment", DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm"));
+        var template = parse("{day} {moment}", configuration);
+        assertRendered("2020-02-29 01-03-2020 13:45", template, ImmutableMap.of(
+                "day", LocalDate.of(2020, 2, 29),
+                "moment", LocalDateTime.of(2020, 3, 1, 13, 45, 10)));
+        assertThatThrownBy(() -> template.render(ImmutableMap.of("day", LocalDate.now(), "moment", LocalDate.now()), new StringWriter()))
+                .isInstanceOf(SoutException.class)
+                .hasMessageStartingWith("1:7 ");
+    }
+
+    @Test
+    public void renderMetrics() {
+        var metrics = new StripedRenderMetrics();
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setRenderMetrics(metrics);
+        var template = parse("{name}: {friends|{field}|, }", configuration);
+        var other = parse("{friends|{field}|, }", configuration);
+        var data = ImmutableMap.of(
+                "name", "Piet",
+                "friends", ImmutableList.of(new TestModel(), new TestModel(), new TestModel()));
+
+        assertRendered("Piet: *field*, *field*, *field*", template, data);
+        template.render(data, new ByteArrayOutputStream());
+        assertEquals("*field*, *field*, *field*", other.renderToString(data));
+
+        var templateMetrics = metrics.getTemplateMetrics(template);
+        assertEquals(2, templateMetrics.getLatency().getCount());
+        assertEquals(62, templateMetrics.getOutputSize());
+        assertEquals(Map.of(new Position(28, 1), 6L), templateMetrics.getLoopIterations());
+        assertEquals(Map.of(new Position(20, 1), 3L), metrics.getTemplateMetrics(other).getLoopIterations());
+        assertEquals(25, metrics.getTemplateMetrics(other).getOutputSize());
+        assertEquals(Set.of(new Position(1, 1), new Position(9, 1), new Position(28, 1)), templateMetrics.getNodeLatencies().keySet());
+        assertEquals(2, templateMetrics.getNodeLatency(new Position(28, 1)).getCount());
+        assertEquals(6, templateMetrics.getNodeLatency(new Position(9, 1)).getCount());
+        assertEquals(5, metrics.getResolutions(RenderMetrics.ResolutionStrategy.MAP));
+        assertEquals(9, metrics.getResolutions(RenderMetrics.ResolutionStrategy.FIELD));
+        assertThatThrownBy(() -> template.render(ImmutableMap.of(), new StringWriter())).isInstanceOf(SoutException.class);
+        assertEquals(1, metrics.getResolutionFailures(RenderMetrics.ResolutionStrategy.MAP));
+    }
+
+    @Test
+    public void renderMetricsDontShareTemplates() throws InterruptedException {
+        var first = new StripedRenderMetrics();
+        var second = new StripedRenderMetrics();
+        var both = (RenderMetrics) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{RenderMetrics.class}, (proxy, method, args) -> {
+            method.invoke(first, args);
+            return method.invoke(second, args);
+        });
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setRenderMetrics(both);
+        var template = parse("{friends|{}|, }", configuration);
+
+        assertRendered("a, b", template, ImmutableMap.of("friends", ImmutableList.of("a", "b")));
+
+        assertEquals(1, first.getTemplateMetrics(template).getLatency().getCount());
+        assertEquals(1, second.getTemplateMetrics(template).getLatency().getCount());
+        assertEquals(Map.of(new Position(15, 1), 2L), second.getTemplateMetrics(template).getLoopIterations());
+        var collected = new WeakReference<>(template);
+        template = null;
+        for (int i = 0; i < 100 && collected.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(collected.get()).isNull();
+    }
+
+    @Test
+    public void flightRecorderEvents(@TempDir Path directory) throws IOException {
+        var recordingFile = directory.resolve("sout.jfr");
+        try (var recording = new Recording()) {
+            recording.enable("com.laamella.sout.Parse");
+            recording.enable("com.laamella.sout.Render");
+            recording.enable("com.laamella.sout.SlowNode").withThreshold(Duration.ZERO);
+            recording.start();
+            var template = new SoutTemplate("greeting", "Hello {name}!", new SoutConfiguration('{', '|', '}', '\\', null, null, null));
+            assertRendered("Hello Piet!", template, ImmutableMap.of("name", "Piet"));
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+        var events = RecordingFile.readAllEvents(recordingFile);
+
+        var parse = events.stream().filter(e -> e.getEventType().getName().equals("com.laamella.sout.Parse")).findFirst().orElseThrow();
+        assertEquals("greeting", parse.getString("templateName"));
+        assertEquals(13, parse.getInt("size"));
+        assertEquals(4, parse.getInt("nodeCount"));
+        var render = events.stream().filter(e -> e.getEventType().getName().equals("com.laamella.sout.Render")).findFirst().orElseThrow();
+        assertEquals(11, render.getLong("outputSize"));
+        var slowNode = events.stream().filter(e -> e.getEventType().getName().equals("com.laamella.sout.SlowNode")).findFirst().orElseThrow();
+        assertEquals("name", slowNode.getString("name"));
+        assertEquals("1:7", slowNode.getString("position"));
+    }
+
+    @Test
+    public void renderAll() {
+        var template = parse("Dear {name},");
+        var names = IntStream.range(0, 200).mapToObj(i -> "Person " + i).collect(toList());
+        var models = names.stream().map(name -> name.equals("Person 13") ? ImmutableMap.of() : ImmutableMap.of("name", name)).collect(toList());
+        var outputs = new ConcurrentHashMap<Object, StringWriter>();
+
+        var result = template.renderAll(models, model -> outputs.computeIfAbsent(model, m -> new StringWriter()), 8);
+
+        assertEquals(200, result.getRenderCount());
+        assertEquals(1, result.getFailures().size());
+        assertEquals(13, result.getFailures().get(0).getIndex());
+        assertEquals(199, outputs.size());
+        assertEquals("Dear Person 150,", outputs.get(models.get(150)).toString());
+    }
+
+    @Test
+    public void renderAllKeepsErrors() {
+        var template = parse("Dear {name},");
+        var error = new AssertionError("no output");
+
+        var result = template.renderAll(List.of(Map.of("name", "Piet")), model -> {
+            throw error;
+        }, 2);
+
+        assertEquals(1, result.getFailures().size());
+        assertThat(result.getFailures().get(0).getException()).isSameAs(error);
+    }
+
+    @Test
+    public void renderAllWhenInterrupted() {
+        var template = parse("Dear {name},");
+        Thread.currentThread().interrupt();
+        try {
+            assertThatThrownBy(() -> template.renderAll(List.of(Map.of("name", "Piet")), model -> new StringWriter(), 1))
+                    .isInstanceOf(SoutException.class)
+                    .hasCauseInstanceOf(InterruptedException.class);
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void incrementalRendering() {
+        class Counter implements Versioned {
+            int count = 0;
+
+            @Override
+            public long getVersion() {
+                return count;
+            }
+        }
+        var template = parse("{title} {user|{name}: {counter|{count}}} {items|{}|, }");
+        var renderer = new IncrementalRenderer(template);
+        var counter = new Counter();
+        var model = new HashMap<String, Object>();
+        model.put("title", "Dashboard");
+        model.put("user", ImmutableMap.of("name", "Piet", "counter", counter));
+        model.put("items", ImmutableList.of(1, 2));
+
+        assertEquals("Dashboard Piet: 0 1, 2", renderer.render(model));
+        assertEquals(3, renderer.getRenderedSections());
+
+        model.put("title", "Board");
+        assertEquals("Board Piet: 0 1, 2", renderer.render(model));
+        assertEquals(0, renderer.getRenderedSections());
+        assertEquals(2, renderer.getReusedSections());
+
+        counter.count++;
+        assertEquals("Board Piet: 1 1, 2", renderer.render(model));
+        assertEquals(2, renderer.getRenderedSections());
+        assertEquals(1, renderer.getReusedSections());
+
+        model.put("items", ImmutableList.of(3));
+        assertEquals("Board Piet: 1 3", renderer.render(model));
+        assertEquals(1, renderer.getRenderedSections());
+        assertEquals(1, renderer.getReusedSections());
+    }
+
+    @Test
+    public void incrementalRenderingRendersCustomRenderersAgain() {
+        var clock = new AtomicInteger();
+        var metrics = new StripedRenderMetrics();
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', (name, parts, model, scope, position, outputWriter) -> {
+            if (name.equals("time")) {
+                outputWriter.write(Integer.toString(clock.get()));
+                return true;
+            }
+            return false;
+        }, null, null);
+        configuration.setRenderMetrics(metrics);
+        var template = parse("{user|{name} at {time}} {other|{name}}", configuration);
+        var renderer = new IncrementalRenderer(template);
+        var model = ImmutableMap.of("user", ImmutableMap.of("name", "Piet"), "other", ImmutableMap.of("name", "Joke"));
+
+        assertEquals("Piet at 0 Joke", renderer.render(model));
+        clock.incrementAndGet();
+        long resolutions = metrics.getResolutions(RenderMetrics.ResolutionStrategy.MAP);
+        assertEquals("Piet at 1 Joke", renderer.render(model));
+        assertEquals(1, renderer.getRenderedSections());
+        assertEquals(1, renderer.getReusedSections());
+        // "user", "name" and "other" are resolved while rendering.
+        // Checking if "other" changed resolves "other" and "name" again, which is measured too.
+        assertEquals(resolutions + 5, metrics.getResolutions(RenderMetrics.ResolutionStrategy.MAP));
+    }
+
+    @Test
+    public void fragmentCache() {
+        var cache = new FragmentCache(FragmentCache.Keying.EQUALS, 2, 1000);
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setFragmentCache("product", cache);
+        var template = parse("{products|{product|<{name}>}|, }", configuration);
+        var products = ImmutableList.of(
+                ImmutableMap.of("product", ImmutableMap.of("name", "apple")),
+                ImmutableMap.of("product", ImmutableMap.of("name", "pear")),
+                ImmutableMap.of("product", ImmutableMap.of("name", "apple")));
+
+        assertRendered("<apple>, <pear>, <apple>", template, ImmutableMap.of("products", products));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        assertRendered("<apple>, <pear>, <apple>", template, ImmutableMap.of("products", products));
+        assertEquals(4, cache.getHits());
+
+        assertRendered("<kiwi>", template, ImmutableMap.of("products", ImmutableList.of(ImmutableMap.of("product", ImmutableMap.of("name", "kiwi")))));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void fragmentsThatRenderTheModelAroundThemAreNotCached() {
+        var cache = new FragmentCache(FragmentCache.Keying.EQUALS, 10, 1000);
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setFragmentCache("vip", cache);
+        configuration.setFragmentCache("friends", cache);
+        var template = parse("{vip|{name} (VIP)|{name}} {friends|{name}: |{}|, |.}", configuration);
+        var friends = ImmutableList.of("Hans", "Henk");
+
+        assertRendered("Piet (VIP) Piet: Hans, Henk.", template, ImmutableMap.of("name", "Piet", "vip", true, "friends", friends));
+        assertRendered("Joke (VIP) Joke: Hans, Henk.", template, ImmutableMap.of("name", "Joke", "vip", true, "friends", friends));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void incrementalRenderingSeesNamesInsideCachedFragments() {
+        var cache = new FragmentCache(FragmentCache.Keying.IDENTITY, 10, 1000);
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setFragmentCache("user", cache);
+        var template = parse("{user|<{name}>}", configuration);
+        var renderer = new IncrementalRenderer(template);
+        var user = new HashMap<String, Object>();
+        user.put("name", "Piet");
+        var model = ImmutableMap.of("user", user);
+
+        assertEquals("<Piet>", renderer.render(model));
+        user.put("name", "Joke");
+        assertEquals("<Joke>", renderer.render(model));
+        assertEquals(1, renderer.getRenderedSections());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void cachedFragmentsWithIncludesAreNotUsedAfterThePartialChanges() {
+        var cache = new FragmentCache(FragmentCache.Keying.EQUALS, 10, 1000);
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setFragmentCache("product", cache);
+        configuration.setPartial("label", parse("<{name}>", configuration));
+        var template = parse("{product|{@label}}", configuration);
+        var data = ImmutableMap.of("product", ImmutableMap.of("name", "apple"));
+
+        assertRendered("<apple>", template, data);
+        assertRendered("<apple>", template, data);
+        assertEquals(1, cache.getHits());
+
+        configuration.setPartial("label", parse("[{name}]", configuration));
+        assertRendered("[apple]", template, data);
+    }
+
+    @Test
+    public void typedTemplate() {
+        record Line(String product, int amount) {
+        }
+        record Order(String customer, boolean paid, List<Line> lines) {
+        }
+        class Box<T> {
+            final T content;
+
+            Box(T content) {
+                this.content = content;
+            }
+        }
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        var template = new SoutTemplate("{content|{customer}: {lines|{product} x{amount}|, }{paid| (paid)}}", new TypeToken<Box<Order>>() {
+        }.getType(), configuration);
+
+        assertRendered("Piet: apple x2, pear x1 (paid)", template, new Box<>(new Order("Piet", true, ImmutableList.of(new Line("apple", 2), new Line("pear", 1)))));
+        assertThatThrownBy(() -> template.render(ImmutableMap.of("content", "x"), new StringWriter()))
+                .isInstanceOf(SoutException.class)
+                .hasMessageContaining("not com.google.common.collect.SingletonImmutableBiMap");
+        assertThatThrownBy(() -> new SoutTemplate("{content|{lines|{prodcut}}}", new TypeToken<Box<Order>>() {
+        }.getType(), configuration))
+                .isInstanceOf(SoutException.class)
+                .hasMessageEndingWith(" prodcut not found on " + Line.class.getName() + ".");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void boundNamesAreResolvedAsUsualOnOtherTypes() {
+        record Person(String name) {
+        }
+        record Team(List<Person> members) {
+        }
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        var template = new SoutTemplate("{members|{name}|, }", Team.class, configuration);
+        // Heap pollution, like from a raw type or an unchecked cast.
+        var members = (List<Person>) (List<?>) List.of(new Person("Piet"), ImmutableMap.of("name", "Hans"));
+
+        assertRendered("Piet, Hans", template, new Team(members));
+        var nesting = (NestedRenderer) template.rootRenderer;
+        var name = (NameRenderer) nesting.parts[0];
+        assertThat(name.path.segments[0].boundAccessor).isNotNull();
+    }
+
+    @Test
+    public void renderToString() {
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', (name, parts, model, scope, position, outputWriter) -> {
+            if (name.equals("inner")) {
+                outputWriter.write(parse("<{x}>").renderToString(model));
+                return true;
+            }
+            return false;
+        }, null, null);
+        var template = parse("{x} {inner} {x}", configuration);
+
+        assertEquals("1 <1> 1", template.renderToString(ImmutableMap.of("x", 1)));
+        assertEquals("22 <22> 22", template.renderToString(ImmutableMap.of("x", 22)));
+        var output = new StringBuilder("> ");
+        template.renderTo(ImmutableMap.of("x", 3), output);
+        assertEquals("> 3 <3> 3", output.toString());
+    }
+
+    @Test
+    public void outputSizeIsLearned() {
+        var template = parse("{}");
+        for (int i = 0; i < 1000; i++) {
+            template.renderToString("x".repeat(i % 10 == 0 ? 2000 : 1000));
+        }
+        assertThat(template.outputSize.get()).isBetween(1000, 2000);
+        for (int i = 0; i < 1000; i++) {
+            template.renderToString("x".repeat(100));
+        }
+        assertThat(template.outputSize.get()).isBetween(100, 200);
+    }
+
+    @Test
+    public void serializedTemplate() {
+        var source = "Hello {name},\n{prices|{}|, }\n{missing}";
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setDecimals("", 2);
+        var output = new ByteArrayOutputStream();
+        var original = parse(source, configuration);
+        original.writeTo(output);
+        var serialized = ByteBuffer.wrap(output.toByteArray());
+
+        var loaded = new SoutTemplate(serialized, configuration);
+
+        assertEquals(original.toString(), loaded.toString());
+        assertRendered("Hello Piet,\n1.50, 2.00\n?", loaded, ImmutableMap.of("name", "Piet", "prices", ImmutableList.of(1.5, 2), "missing", "?"));
+        assertThatThrownBy(() -> loaded.render(ImmutableMap.of("name", "Piet", "prices", ImmutableList.of()), new StringWriter()))
+                .hasMessage(messageOf(() -> original.render(ImmutableMap.of("name", "Piet", "prices", ImmutableList.of()), new StringWriter())));
+        assertThat(loaded.isParsedFrom(source)).isTrue();
+        assertThat(loaded.isParsedFrom(source + " ")).isFalse();
+        var big = "x".repeat(10_000) + "{name}";
+        assertThat(parse(big).isParsedFrom(new StringBuilder(big))).isTrue();
+        assertThat(parse(big).isParsedFrom("x".repeat(9_999) + "y{name}")).isFalse();
+
+        assertThatThrownBy(() -> new SoutTemplate(serialized, new SoutConfiguration('<', '|', '>', '\\', null, null, null)))
+                .isInstanceOf(SoutException.class)
+                .hasMessageContaining("other delimiters");
+        var damaged = output.toByteArray();
+        damaged[30]++;
+        assertThatThrownBy(() -> new SoutTemplate(ByteBuffer.wrap(damaged), configuration))
+                .isInstanceOf(SoutException.class)
+                .hasMessageContaining("damaged");
+    }
+
+    @Test
+    public void partials() {
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setPartial("friend", parse("<{name}>", configuration));
+        configuration.setPartial("friends", parse("{friends|{@friend}|, }", configuration));
+        var template = parse("{name}: {@friends}", configuration);
+        var other = parse("{@friend}", configuration);
+        var data = ImmutableMap.of("name", "Piet", "friends", ImmutableList.of(ImmutableMap.of("name", "Hans"), ImmutableMap.of("name", "Henk")));
+
+        assertRendered("Piet: <Hans>, <Henk>", template, data);
+        assertThat(((IncludeRenderer) other.rootRenderer).partial)
+                .isSameAs(configuration.findPartial("friend"));
+
+        configuration.setPartial("friend", parse("[{name}]", configuration));
+        assertRendered("Piet: [Hans], [Henk]", template, data);
+        assertRendered("[Piet]", other, data);
+        var output = new ByteArrayOutputStream();
+        template.writeTo(output);
+        assertRendered("Piet: [Hans], [Henk]", new SoutTemplate(ByteBuffer.wrap(output.toByteArray()), configuration), data);
+
+        assertThatThrownBy(() -> configuration.setPartial("friend", parse("{@friends}", configuration)))
+                .isInstanceOf(SoutException.class)
+                .hasMessage("Include cycle: friend → friends → friend.");
+        assertRendered("Piet: [Hans], [Henk]", template, data);
+        assertThatThrownBy(() -> parse("x\n {@enemy}", configuration))
+                .isInstanceOf(SoutException.class)
+                .hasMessageEndingWith("Partial enemy not found.");
+        assertThatThrownBy(() -> parse("{@friend|x}", configuration))
+                .isInstanceOf(SoutException.class)
+                .hasMessageEndingWith("Include @friend can't have parts.");
+    }
+
+    @Test
+    public void namesStartingWithAnEscapedIncludeMarkerAreNotIncludes() {
+        var template = parse("{\\@id} {\\@tags|{}|, } {a\\@b}");
+        var data = ImmutableMap.of("@id", 12, "@tags", ImmutableList.of("x", "y"), "a\\@b", "z");
+
+        assertRendered("12 x, y z", template, data);
+    }
+
+    @Test
+    public void templatesAreCompiledAfterEnoughRenders() throws InterruptedException {
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setCompileThreshold(3);
+        var text = "Hello {name},\n{friends|<ul>|<li>{name}</li>||</ul>}{vip| (VIP)|}";
+        var template = parse(text, configuration);
+        var interpreted = parse(text);
+        var data = ImmutableMap.of("name", "Piet", "vip", true, "friends", ImmutableList.of(ImmutableMap.of("name", "Hans"), ImmutableMap.of("name", "Henk")));
+        var expected = "Hello Piet,\n<ul><li>Hans</li><li>Henk</li></ul> (VIP)";
+
+        for (int i = 0; i < 3; i++) {
+            assertRendered(expected, template, data);
+        }
+        for (int i = 0; i < 600 && template.compiledTier.compiled() == null; i++) {
+            Thread.sleep(100);
+        }
+
+        assertThat(template.compiledTier.compiled()).isNotNull();
+        assertRendered(expected, template, data);
+        assertThat(template.renderToString(data)).isEqualTo(expected);
+        var wrongData = ImmutableMap.of("name", "Piet", "vip", "yes", "friends", ImmutableList.of());
+        assertThatThrownBy(() -> template.render(wrongData, new StringWriter()))
+                .isInstanceOf(SoutException.class)
+                .hasMessage(messageOf(() -> interpreted.render(wrongData, new StringWriter())));
+
+        var customConfiguration = new SoutConfiguration('{', '|', '}', '\\', (name, parts, model, scope, position, outputWriter) -> false, null, null);
+        customConfiguration.setCompileThreshold(3);
+        assertThat(parse(text, customConfiguration).compiledTier).isNull();
+    }
+
+    @Test
+    public void compiledTemplatesKeepBoundNamesAndEncodedTexts() throws InterruptedException {
+        record Line(String product, int amount) {
+        }
+        record Order(List<Line> lines) {
+        }
+        var configuration = new SoutConfiguration('{', '|', '}', '\\', null, null, null);
+        configuration.setCompileThreshold(1);
+        var template = new SoutTemplate("{lines|• {product} × {amount}|\n}", Order.class, configuration);
+        var data = new Order(List.of(new Line("äpple", 2), new Line("peer", 1)));
+        var expected = "• äpple × 2\n• peer × 1";
+
+        assertRendered(expected, template, data);
+        for (int i = 0; i < 600 && template.compiledTier.compiled() == null; i++) {
+            Thread.sleep(100);
+        }
+
+        assertThat(template.compiledTier.compiled()).isNotNull();
+        var output = new ByteArrayOutputStream();
+        template.render(data, output);
+        assertEquals(expected, output.toString(UTF_8));
+        var generator = new SoutCompiler.Generator(true);
+        generator.generate(template.rootRenderer, "com.laamella.sout", "Bound");
+        var nesting = (NestedRenderer) template.rootRenderer;
+        var product = (NameRenderer) ((ContainerRenderer) nesting.parts[0]).children[1];
+        var amount = (NameRenderer) ((ContainerRenderer) nesting.parts[0]).children[3];
+        assertThat(generator.names()).extracting(name -> name.path).containsOnly(nesting.path, product.path, amount.path);
+        assertThat(product.path.segments[0].boundAccessor).isNotNull();
+    }
+
+    private static String messageOf(Runnable action) {
+        try {
+            action.run();
+            throw new AssertionError("No exception.");
+        } catch (SoutException e) {
+            return e.getMessage();
+        }
+    }
 
     private SoutTemplate parse(String template) {
         return parse(template, new SoutConfiguration('{', '|', '}', '\\', null, null, null));